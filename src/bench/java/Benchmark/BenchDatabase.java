@@ -0,0 +1,68 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Test data shared by the JMH benchmarks and LoadTest: a freshly reset database with a given number of accounts and
+ * messages.
+ *
+ * Account ids run from 1 to the number of accounts, and every account's password is "password". Messages are spread
+ * round-robin over the accounts, so message n (counting from 1) was posted by account 1 + (n - 1) % accounts, and
+ * message ids run from 1 to the number of messages.
+ */
+class BenchDatabase {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private BenchDatabase() {
+    }
+
+    static void seed(int messages, int accounts) throws SQLException {
+
+        ConnectionUtil.resetTestDatabase(); // account 1 and message 1
+
+        for (int i = 2; i <= accounts; i++) {
+            AccountDAO.addAccount(new Account(username(i), "password"));
+        }
+
+        List<Message> batch = new ArrayList<>(BATCH_SIZE);
+        for (int n = 2; n <= messages; n++) {
+            batch.add(new Message(1 + (n - 1) % accounts, "bench message " + n, 1669947792L + n));
+            if (batch.size() == BATCH_SIZE || n == messages) {
+                MessageDAO.newMessages(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the username of a seeded account
+     */
+    static String username(int account) {
+        return account == 1 ? "testuser1" : "benchuser" + account;
+    }
+
+    /**
+     * Deletes every message above lastId, so benchmarks that insert can put the table back to its seeded size between
+     * iterations.
+     */
+    static void truncateAfter(int lastId) throws SQLException {
+
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement statement = connection.prepareStatement(
+                        "delete from message where message_id > ?")) {
+            statement.setInt(1, lastId);
+            statement.executeUpdate();
+        }
+    }
+}
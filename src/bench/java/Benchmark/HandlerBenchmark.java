@@ -0,0 +1,123 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Service.MessageService;
+import io.javalin.Javalin;
+
+/**
+ * Whole requests, end to end: the app is started on port 8080 in this JVM and called over a keep-alive loopback
+ * connection, so each operation covers the HTTP client and Jetty as well as routing, the handler, the service and its
+ * caches, the DAO and serialization. Each benchmark fails if the response isn't a 200.
+ *
+ * The client is HttpURLConnection, which sends and reads on the calling thread. java.net.http.HttpClient hands every
+ * exchange to its own selector thread and back, which on a small machine costs more than the request being measured.
+ *
+ * POST /messages grows the table, so messages it added are deleted again before every iteration.
+ *
+ *   mvn -Pbench test-compile exec:exec@jmh -Djmh.args=HandlerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+    private static final int PORT = 8080;
+    private static final int MESSAGES = 10_000;
+    private static final int ACCOUNTS = 100;
+
+    private static final byte[] NEW_MESSAGE = ("{\"posted_by\":1, \"message_text\": \"benchmark message\", "
+            + "\"time_posted_epoch\": 1669947792}").getBytes(StandardCharsets.UTF_8);
+
+    private Javalin app;
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+        BenchDatabase.seed(MESSAGES, ACCOUNTS);
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+    }
+
+    @Setup(Level.Iteration)
+    public void removeInserted() throws SQLException {
+        MessageService.drainWrites();
+        BenchDatabase.truncateAfter(MESSAGES);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+        app.stop();
+        BenchDatabase.truncateAfter(MESSAGES);
+    }
+
+    @Benchmark
+    public byte[] getMessageById() throws IOException {
+        return get("/messages/" + (1 + ThreadLocalRandom.current().nextInt(MESSAGES)));
+    }
+
+    @Benchmark
+    public byte[] getMessagePage() throws IOException {
+        return get("/messages?limit=100");
+    }
+
+    @Benchmark
+    public byte[] getAccountMessages() throws IOException {
+        return get("/accounts/" + (1 + ThreadLocalRandom.current().nextInt(ACCOUNTS)) + "/messages?limit=20");
+    }
+
+    @Benchmark
+    public byte[] postMessage() throws IOException {
+        HttpURLConnection connection = open("/messages");
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(NEW_MESSAGE);
+        }
+        return read(connection);
+    }
+
+    private byte[] get(String path) throws IOException {
+        return read(open(path));
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http", "localhost", PORT, path).openConnection();
+    }
+
+    // Reads the whole body, so the connection goes back to the keep-alive cache for the next call
+    private byte[] read(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status != 200) {
+            throw new IllegalStateException(connection.getURL() + " returned " + status);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package Benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.JsonUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Finds the throughput ceiling of the API: starts it on port 8080 against the embedded H2 database and drives it with
+ * an open workload at increasing arrival rates until it can't keep up.
+ *
+ * Open means requests are scheduled at a constant rate whether or not earlier ones have finished, the way independent
+ * users arrive, rather than each client waiting for its last response before sending the next (which lets a slow
+ * server slow the load down and hide its own stalls). Latency is measured from when a request was due to be sent, not
+ * from when a client thread got round to sending it, so time spent queued behind a stall counts, correcting for
+ * coordinated omission. The uncorrected p99, measured from the actual send, is printed alongside for comparison.
+ *
+ * Each rate is a fresh run: the database is reseeded, then the schedule runs for bench.warmup seconds unmeasured and
+ * bench.seconds measured. A rate is sustained if the server completed at least 95% of it with no errors, no dropped
+ * requests and a corrected p99 within bench.sloMillis. Rates are tried in order and stop at the first that isn't
+ * sustained; the report ends with the highest sustained throughput of each mix.
+ *
+ * The mixed workload is run first, then (with bench.isolate) each endpoint on its own for its individual ceiling.
+ *
+ *   mvn -Pbench test-compile exec:java -Dexec.mainClass=Benchmark.LoadTest
+ *
+ * Settings (system properties):
+ *   bench.rates      comma separated arrival rates in requests per second, default 100,200,400,800,1600,3200
+ *   bench.seconds    measured seconds per rate, default 10
+ *   bench.warmup     unmeasured seconds before each rate, default 3
+ *   bench.sloMillis  the corrected p99 a rate must stay within to count as sustained, default 100
+ *   bench.mix        endpoint:weight pairs, default register:2,login:8,post:15,read_message:30,read_page:20,
+ *                    read_account:15,patch:7,delete:3
+ *   bench.isolate    also find each endpoint's ceiling on its own, default true
+ *   bench.clients    client threads sending requests, each with its own keep-alive connection, default 64
+ *   bench.accounts   accounts seeded before each rate, default 100
+ *   bench.messages   messages seeded before each rate, default 10000
+ */
+public class LoadTest {
+
+    private static final int PORT = 8080;
+    private static final String DEFAULT_MIX =
+            "register:2,login:8,post:15,read_message:30,read_page:20,read_account:15,patch:7,delete:3";
+    // Stop queueing new requests once this many seconds of them are waiting for a client thread
+    private static final int MAX_BACKLOG_SECONDS = 5;
+    private static final int DRAIN_SECONDS = 30;
+
+    enum Endpoint {
+        REGISTER("POST /register"),
+        LOGIN("POST /login"),
+        POST("POST /messages"),
+        READ_MESSAGE("GET /messages/{id}"),
+        READ_PAGE("GET /messages?limit=20"),
+        READ_ACCOUNT("GET /accounts/{id}/messages"),
+        PATCH("PATCH /messages/{id}"),
+        DELETE("DELETE /messages/{id}");
+
+        final String route;
+
+        Endpoint(String route) {
+            this.route = route;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int[] rates = parseInts(System.getProperty("bench.rates", "100,200,400,800,1600,3200"));
+        int seconds = Integer.getInteger("bench.seconds", 10);
+        int warmup = Integer.getInteger("bench.warmup", 3);
+        double sloMillis = Double.parseDouble(System.getProperty("bench.sloMillis", "100"));
+        Mix mixed = Mix.parse(System.getProperty("bench.mix", DEFAULT_MIX));
+        boolean isolate = Boolean.parseBoolean(System.getProperty("bench.isolate", "true"));
+        int clients = Integer.getInteger("bench.clients", 64);
+        int accounts = Integer.getInteger("bench.accounts", 100);
+        int messages = Integer.getInteger("bench.messages", 10_000);
+
+        List<Mix> mixes = new ArrayList<>();
+        mixes.add(mixed);
+        if (isolate) {
+            for (Endpoint endpoint : mixed.endpoints()) {
+                mixes.add(Mix.only(endpoint));
+            }
+        }
+
+        System.out.println("java " + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " cpus, " + clients + " client threads, "
+                + accounts + " accounts, " + messages + " messages, p99 objective " + sloMillis + " ms");
+
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        Map<Mix, Step> ceilings = new LinkedHashMap<>();
+        try {
+            for (Mix mix : mixes) {
+                System.out.println();
+                System.out.println("== " + mix.describe() + " ==");
+                Step ceiling = null;
+                for (int rate : rates) {
+                    BenchDatabase.seed(messages, accounts);
+                    Step step = run(mix, rate, warmup, seconds, clients, new Workload(accounts, messages));
+                    step.print(seconds);
+                    if (!step.sustained(seconds, sloMillis)) {
+                        break;
+                    }
+                    ceiling = step;
+                }
+                ceilings.put(mix, ceiling);
+            }
+        } finally {
+            app.stop();
+        }
+
+        System.out.println();
+        System.out.println("== max sustained throughput ==");
+        System.out.println(String.format("%-30s %10s %10s", "mix", "req/s", "p99 ms"));
+        ceilings.forEach((mix, step) -> System.out.println(step == null
+                ? String.format(Locale.ROOT, "%-30s %10s %10s", mix, "< " + rates[0], "-")
+                : String.format(Locale.ROOT, "%-30s %10.0f %10.2f", mix, step.throughput(seconds),
+                        step.all.corrected.getQuantiles(0.99)[0] / 1e6)));
+        System.exit(0);
+    }
+
+    private static Step run(Mix mix, int rate, int warmupSeconds, int seconds, int clients, Workload workload)
+            throws InterruptedException {
+
+        Step step = new Step(rate);
+        ThreadPoolExecutor senders = new ThreadPoolExecutor(clients, clients, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        ThreadLocal<Connection> connections = new ThreadLocal<>();
+        ConcurrentLinkedQueue<Connection> allConnections = new ConcurrentLinkedQueue<>();
+
+        long interval = 1_000_000_000L / rate;
+        long start = System.nanoTime() + 100_000_000L;
+        long measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + seconds * 1_000_000_000L;
+        long maxBacklog = (long) rate * MAX_BACKLOG_SECONDS;
+        step.window(measureFrom, end);
+
+        // Due times come from the schedule, never from when the last send happened, so if this thread is late it
+        // catches up with a burst instead of quietly lowering the rate.
+        for (long i = 0;; i++) {
+            long due = start + i * interval;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Endpoint endpoint = mix.pick();
+            boolean measured = due >= measureFrom;
+            if (senders.getQueue().size() >= maxBacklog) {
+                if (measured) {
+                    step.dropped.increment();
+                }
+                continue;
+            }
+            senders.execute(() -> {
+                Connection connection = connections.get();
+                if (connection == null) {
+                    connection = new Connection();
+                    connections.set(connection);
+                    allConnections.add(connection);
+                }
+                send(connection, endpoint, workload, due, measured, step);
+            });
+        }
+
+        senders.shutdown();
+        if (!senders.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            step.dropped.add(senders.shutdownNow().size());
+            senders.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS);
+        }
+        for (Connection connection : allConnections) {
+            connection.close();
+        }
+        return step;
+    }
+
+    // Runs on a client thread. Only requests due in the measured window are recorded.
+    private static void send(Connection connection, Endpoint endpoint, Workload workload, long due, boolean measured,
+            Step step) {
+
+        long sentAt = System.nanoTime();
+        int status;
+        try {
+            status = workload.send(connection, endpoint);
+        } catch (IOException e) {
+            status = -1;
+        }
+        long now = System.nanoTime();
+
+        step.completedAt(now, status);
+        if (measured) {
+            step.record(endpoint, status, now - due, now - sentAt);
+        }
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * What each request sends, and what the workload has learned so far: the newest message id, and messages it
+     * posted that can be deleted.
+     */
+    private static class Workload {
+
+        private static final byte[] PATCH_BODY = "{\"message_text\":\"edited by the load test\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        private final int accounts;
+        private final String runId = Long.toString(System.nanoTime(), 36);
+        private final AtomicInteger registered = new AtomicInteger();
+        private final AtomicInteger lastMessageId;
+        private final ConcurrentLinkedQueue<Integer> posted = new ConcurrentLinkedQueue<>();
+
+        Workload(int accounts, int messages) {
+            this.accounts = accounts;
+            this.lastMessageId = new AtomicInteger(messages);
+        }
+
+        /**
+         * @return the response status
+         */
+        int send(Connection connection, Endpoint endpoint) throws IOException {
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            switch (endpoint) {
+            case REGISTER:
+                return connection.exchange("POST", "/register", json("{\"username\":\"load-" + runId + "-"
+                        + registered.incrementAndGet() + "\",\"password\":\"password\"}"));
+            case LOGIN:
+                return connection.exchange("POST", "/login", json("{\"username\":\""
+                        + BenchDatabase.username(1 + random.nextInt(accounts)) + "\",\"password\":\"password\"}"));
+            case POST:
+                int status = connection.exchange("POST", "/messages", json("{\"posted_by\":"
+                        + (1 + random.nextInt(accounts)) + ",\"message_text\":\"posted by the load test\","
+                        + "\"time_posted_epoch\":1669947792}"));
+                if (status == 200) {
+                    int id = JsonUtil.MESSAGE_READER.<Message>readValue(connection.body()).getMessage_id();
+                    posted.add(id);
+                    lastMessageId.accumulateAndGet(id, Math::max);
+                }
+                return status;
+            case READ_MESSAGE:
+                return connection.exchange("GET", "/messages/" + randomMessage(), null);
+            case READ_PAGE:
+                return connection.exchange("GET", "/messages?limit=20", null);
+            case READ_ACCOUNT:
+                return connection.exchange("GET", "/accounts/" + (1 + random.nextInt(accounts))
+                        + "/messages?limit=20", null);
+            case PATCH:
+                return connection.exchange("PATCH", "/messages/" + randomMessage(), PATCH_BODY);
+            case DELETE:
+                // Our own posts first, so reads mostly find what they look for
+                Integer own = posted.poll();
+                return connection.exchange("DELETE", "/messages/" + (own != null ? own : randomMessage()), null);
+            default:
+                throw new IllegalArgumentException(endpoint.name());
+            }
+        }
+
+        private int randomMessage() {
+            return 1 + ThreadLocalRandom.current().nextInt(lastMessageId.get());
+        }
+
+        private static byte[] json(String body) {
+            return body.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Endpoints and their weights. pick() chooses one at random in proportion to its weight.
+     */
+    private static class Mix {
+
+        private final EnumMap<Endpoint, Integer> weights;
+        private final Endpoint[] choices;
+
+        private Mix(EnumMap<Endpoint, Integer> weights) {
+            this.weights = weights;
+            List<Endpoint> choices = new ArrayList<>();
+            weights.forEach((endpoint, weight) -> {
+                for (int i = 0; i < weight; i++) {
+                    choices.add(endpoint);
+                }
+            });
+            this.choices = choices.toArray(new Endpoint[0]);
+        }
+
+        static Mix parse(String spec) {
+            EnumMap<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+            for (String part : spec.split(",")) {
+                String[] pair = part.trim().split(":");
+                int weight = Integer.parseInt(pair[1].trim());
+                if (weight > 0) {
+                    weights.put(Endpoint.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+                }
+            }
+            if (weights.isEmpty()) {
+                throw new IllegalArgumentException("bench.mix has no endpoints: " + spec);
+            }
+            return new Mix(weights);
+        }
+
+        static Mix only(Endpoint endpoint) {
+            EnumMap<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+            weights.put(endpoint, 1);
+            return new Mix(weights);
+        }
+
+        Endpoint pick() {
+            return choices[ThreadLocalRandom.current().nextInt(choices.length)];
+        }
+
+        List<Endpoint> endpoints() {
+            return new ArrayList<>(weights.keySet());
+        }
+
+        @Override
+        public String toString() {
+            return weights.size() == 1 ? weights.keySet().iterator().next().route : "mixed";
+        }
+
+        String describe() {
+            if (weights.size() == 1) {
+                return toString();
+            }
+            StringBuilder out = new StringBuilder("mixed");
+            String separator = " ";
+            for (Map.Entry<Endpoint, Integer> entry : weights.entrySet()) {
+                out.append(separator).append(entry.getKey().name().toLowerCase(Locale.ROOT)).append(':')
+                        .append(entry.getValue());
+                separator = ",";
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * The results of one rate.
+     */
+    private static class Step {
+
+        final int rate;
+        final Stats all = new Stats();
+        final EnumMap<Endpoint, Stats> endpoints = new EnumMap<>(Endpoint.class);
+        final LongAdder dropped = new LongAdder();
+        // Successful responses that arrived during the measured window, whenever they were due. Under overload
+        // requests due in the window finish long after it, so counting those would report the offered rate.
+        final LongAdder completedInWindow = new LongAdder();
+        private long windowStart;
+        private long windowEnd;
+
+        Step(int rate) {
+            this.rate = rate;
+            for (Endpoint endpoint : Endpoint.values()) {
+                endpoints.put(endpoint, new Stats());
+            }
+        }
+
+        void window(long start, long end) {
+            windowStart = start;
+            windowEnd = end;
+        }
+
+        void completedAt(long nanos, int status) {
+            if (nanos >= windowStart && nanos < windowEnd && status >= 200 && status < 500) {
+                completedInWindow.increment();
+            }
+        }
+
+        double throughput(int seconds) {
+            return completedInWindow.sum() / (double) seconds;
+        }
+
+        void record(Endpoint endpoint, int status, long correctedNanos, long serviceNanos) {
+            all.record(status, correctedNanos, serviceNanos);
+            endpoints.get(endpoint).record(status, correctedNanos, serviceNanos);
+        }
+
+        boolean sustained(int seconds, double sloMillis) {
+            return dropped.sum() == 0 && all.errors.sum() == 0
+                    && throughput(seconds) >= 0.95 * rate
+                    && all.corrected.getQuantiles(0.99)[0] <= sloMillis * 1e6;
+        }
+
+        void print(int seconds) {
+            System.out.println(String.format(Locale.ROOT, "target %d req/s: achieved %.0f req/s, %d dropped",
+                    rate, throughput(seconds), dropped.sum()));
+            System.out.println(String.format("  %-30s %8s %9s %6s %6s %9s %9s %9s %9s %11s", "endpoint", "requests",
+                    "offered/s", "4xx", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "p99 uncorr"));
+            endpoints.forEach((endpoint, stats) -> {
+                if (stats.completed() > 0) {
+                    stats.print(endpoint.route, seconds);
+                }
+            });
+            all.print("all", seconds);
+        }
+    }
+
+    private static class Stats {
+
+        // From when each request was due to be sent, and from when it actually was
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(int status, long correctedNanos, long serviceNanos) {
+            if (status < 200 || status >= 500) {
+                errors.increment();
+                return;
+            }
+            if (status >= 400) {
+                rejected.increment();
+            }
+            corrected.record(correctedNanos);
+            service.record(serviceNanos);
+        }
+
+        long completed() {
+            return corrected.getCount();
+        }
+
+        void print(String name, int seconds) {
+            long[] latency = corrected.getQuantiles(0.5, 0.99, 0.999);
+            System.out.println(String.format(Locale.ROOT, "  %-30s %8d %9.0f %6d %6d %9.2f %9.2f %9.2f %9.2f %11.2f",
+                    name, completed(), completed() / (double) seconds, rejected.sum(), errors.sum(), latency[0] / 1e6,
+                    latency[1] / 1e6, latency[2] / 1e6, corrected.getMaxNanos() / 1e6,
+                    service.getQuantiles(0.99)[0] / 1e6));
+        }
+    }
+
+    /**
+     * A minimal HTTP/1.1 client over one keep-alive socket, used by one client thread at a time. It sends and reads on
+     * the calling thread, so the measured latency doesn't include handoffs to client-side selector threads, and unlike
+     * HttpURLConnection it can send PATCH.
+     */
+    private static class Connection implements Closeable {
+
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(16 * 1024);
+
+        /**
+         * Sends one request and reads the whole response, connecting first if there's no open connection.
+         * @param requestBody JSON, or null for none
+         * @return the status code. The response body is in body() until the next exchange.
+         */
+        int exchange(String method, String path, byte[] requestBody) throws IOException {
+
+            StringBuilder head = new StringBuilder(128)
+                    .append(method).append(' ').append(path).append(" HTTP/1.1\r\nHost: localhost\r\n");
+            if (requestBody != null) {
+                head.append("Content-Type: application/json\r\nContent-Length: ").append(requestBody.length)
+                        .append("\r\n");
+            }
+            head.append("\r\n");
+
+            try {
+                if (socket == null) {
+                    connect();
+                }
+                out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+                if (requestBody != null) {
+                    out.write(requestBody);
+                }
+                out.flush();
+                return readResponse();
+
+            } catch (IOException e) {
+                // Start the next exchange on a new connection
+                close();
+                throw e;
+            }
+        }
+
+        byte[] body() {
+            return body.toByteArray();
+        }
+
+        private int readResponse() throws IOException {
+
+            String statusLine = readLine();
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long length = -1;
+            boolean chunked = false;
+            boolean keepAlive = true;
+            for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+                int colon = line.indexOf(':');
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    length = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    chunked = value.equalsIgnoreCase("chunked");
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    keepAlive = !value.equalsIgnoreCase("close");
+                }
+            }
+
+            body.reset();
+            if (chunked) {
+                for (long size = chunkSize(); size > 0; size = chunkSize()) {
+                    copy(size);
+                    readLine();
+                }
+                while (!readLine().isEmpty()) {
+                    // trailers
+                }
+            } else if (length >= 0) {
+                copy(length);
+            } else {
+                in.transferTo(body);
+                keepAlive = false;
+            }
+
+            if (!keepAlive) {
+                close();
+            }
+            return status;
+        }
+
+        private long chunkSize() throws IOException {
+            String line = readLine();
+            int extension = line.indexOf(';');
+            return Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+        }
+
+        private void copy(long length) throws IOException {
+            byte[] buffer = new byte[8192];
+            while (length > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+                if (read < 0) {
+                    throw new EOFException("connection closed mid-response");
+                }
+                body.write(buffer, 0, read);
+                length -= read;
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder(64);
+            for (int b = in.read(); b != '\n'; b = in.read()) {
+                if (b < 0) {
+                    throw new EOFException("connection closed");
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket("localhost", PORT);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            out = new BufferedOutputStream(socket.getOutputStream(), 4 * 1024);
+        }
+
+        @Override
+        public void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+                socket = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * MessageDAO against the H2 file database, straight through the connection pool with no caches in front, at two
+ * table sizes.
+ *
+ * Ids are picked at random across the whole table, so the reads don't all hit the same pages. newMessage() grows the
+ * table, so rows it added are deleted again before every iteration.
+ *
+ *   mvn -Pbench test-compile exec:exec@jmh -Djmh.args=MessageDaoBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDaoBenchmark {
+
+    private static final int ACCOUNTS = 100;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "1000", "100000" })
+    public int tableSize;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchDatabase.seed(tableSize, ACCOUNTS);
+    }
+
+    @Setup(Level.Iteration)
+    public void removeInserted() throws SQLException {
+        BenchDatabase.truncateAfter(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        BenchDatabase.truncateAfter(tableSize);
+    }
+
+    @Benchmark
+    public Optional<Message> getMessageById() {
+        return MessageDAO.getMessageById(randomId());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesAfter() {
+        return MessageDAO.getMessagesAfter(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUserIdAfter() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return MessageDAO.getMessagesByUserIdAfter(1 + random.nextInt(ACCOUNTS), randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Optional<Message> newMessage() {
+        return MessageDAO.newMessage(new Message(1 + ThreadLocalRandom.current().nextInt(ACCOUNTS),
+                "benchmark message", 1669947792L));
+    }
+
+    @Benchmark
+    public Optional<Message> updateMessage() {
+        return MessageDAO.updateMessage(randomId(), "updated benchmark message");
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(tableSize);
+    }
+}
@@ -0,0 +1,76 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+/**
+ * MessageService validation: the checks every new message goes through, and the messages they turn away before the
+ * database is involved (blank, too long, or from an account that doesn't exist).
+ *
+ *   mvn -Pbench test-compile exec:exec@jmh -Djmh.args=MessageServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+
+    private static final int ACCOUNTS = 100;
+
+    // Not constants, so the JIT can't fold the checks away
+    private String validText = "a perfectly ordinary message of a typical length";
+    private String blankText = "      ";
+    private String longText = "x".repeat(255);
+    private int knownAccount = 1;
+    private int unknownAccount = ACCOUNTS + 1;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchDatabase.seed(1000, ACCOUNTS);
+        AccountService.loadAccounts();
+    }
+
+    @Benchmark
+    public boolean isValidText() {
+        return MessageService.isValidText(validText);
+    }
+
+    @Benchmark
+    public boolean accountExists() {
+        return AccountService.accountExists(knownAccount);
+    }
+
+    @Benchmark
+    public Optional<Message> rejectBlankText() {
+        return MessageService.newMessage(new Message(knownAccount, blankText, 1669947792L));
+    }
+
+    @Benchmark
+    public Optional<Message> rejectTooLong() {
+        return MessageService.newMessage(new Message(knownAccount, longText, 1669947792L));
+    }
+
+    @Benchmark
+    public Optional<Message> rejectUnknownAccount() {
+        return MessageService.newMessage(new Message(unknownAccount, validText, 1669947792L));
+    }
+}
@@ -0,0 +1,87 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Util.JsonUtil;
+import Util.ModelJsonMapper;
+
+/**
+ * JSON encoding of a Message and of a List<Message> the size of a page, and decoding of a request body: Jackson
+ * databind (the shared ObjectWriter/ObjectReader in JsonUtil) against ModelJsonMapper, which is what Javalin uses and
+ * goes through ModelCodec.
+ *
+ *   mvn -Pbench test-compile exec:exec@jmh -Djmh.args=SerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({ "100", "1000" })
+    public int listSize;
+
+    private final ModelJsonMapper mapper = new ModelJsonMapper();
+    private Message message;
+    private List<Message> messages;
+    private String requestBody;
+
+    @Setup
+    public void setUp() {
+        message = new Message(12345, 42, "a perfectly ordinary message of a typical length", 1669947792L);
+        messages = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++) {
+            messages.add(new Message(i, 1 + i % 100, "bench message " + i, 1669947792L + i));
+        }
+        requestBody = "{\"posted_by\":42,\"message_text\":\"a perfectly ordinary message of a typical length\","
+                + "\"time_posted_epoch\":1669947792}";
+    }
+
+    @Benchmark
+    public byte[] writeMessageDatabind() throws IOException {
+        return JsonUtil.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] writeMessageCodec() {
+        return ModelJsonMapper.toBytes(message);
+    }
+
+    @Benchmark
+    public byte[] writeListDatabind() throws IOException {
+        return JsonUtil.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] writeListCodec() {
+        return ModelJsonMapper.toBytes(messages);
+    }
+
+    @Benchmark
+    public Message readMessageDatabind() throws IOException {
+        return JsonUtil.MESSAGE_READER.readValue(requestBody);
+    }
+
+    @Benchmark
+    public Message readMessageCodec() {
+        return mapper.fromJsonString(requestBody, Message.class);
+    }
+}
@@ -0,0 +1,253 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.ServerThreadPool;
+import io.javalin.Javalin;
+
+/**
+ * Compares the default Jetty thread pool with virtual-thread request handling (-Dsocialmedia.virtualThreads=true) at
+ * increasing numbers of concurrent keep-alive connections.
+ *
+ * Each connection is a closed loop: send a request, wait for the whole response, send the next. 90% of requests are
+ * GET /messages?limit=20 and 10% are POST /messages, so every request goes through the connection pool to H2. The
+ * server and the client share this JVM, started once per mode on port 8080.
+ *
+ * Run with Java 21 so both modes are available:
+ *   mvn -Pbench test-compile exec:java -Dexec.mainClass=ConcurrencyBenchmark
+ *
+ * Settings (system properties):
+ *   bench.connections  comma separated connection counts, default 1000,10000,50000
+ *   bench.modes        platform,virtual
+ *   bench.seconds      measured seconds per run, default 30
+ *   bench.warmup       unmeasured seconds before each run, default 10
+ *
+ * Every connection holds a socket at both ends, so the process needs about two file descriptors per connection
+ * (ulimit -n). From one client address Linux has roughly 28k ephemeral ports per destination, so connections are
+ * spread across 127.0.0.1, 127.0.0.2, ... with at most 20k per address.
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int PORT = 8080;
+    private static final int SEED_MESSAGES = 1000;
+    private static final int CONNECTIONS_PER_ADDRESS = 20_000;
+    private static final long RAMP_UP_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+
+        int[] connectionCounts = parseInts(System.getProperty("bench.connections", "1000,10000,50000"));
+        String[] modes = System.getProperty("bench.modes", "platform,virtual").split(",");
+        int seconds = Integer.getInteger("bench.seconds", 30);
+        int warmup = Integer.getInteger("bench.warmup", 10);
+
+        System.out.println("java " + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " cpus, pool maxSize "
+                + ConnectionUtil.getPool().getMaxSize());
+        System.out.println(String.format("%-9s %7s %10s %9s %9s %9s %9s %8s %10s",
+                "mode", "conns", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors", "db wait"));
+
+        for (String mode : modes) {
+            System.setProperty(ServerThreadPool.VIRTUAL_THREADS_PROPERTY, String.valueOf(mode.equals("virtual")));
+
+            for (int connections : connectionCounts) {
+                seed();
+                Javalin app = new SocialMediaController().startAPI();
+                app.start(PORT);
+                try {
+                    Result result = run(connections, warmup, seconds);
+                    System.out.println(String.format(Locale.ROOT, "%-9s %7d %10d %9.0f %9.2f %9.2f %9.2f %8d %10s",
+                            mode, connections, result.requests, result.requests / (double) seconds,
+                            result.latency.percentile(0.50) / 1000.0, result.latency.percentile(0.99) / 1000.0,
+                            result.latency.max() / 1000.0, result.errors, result.dbWait));
+                } finally {
+                    app.stop();
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void seed() {
+        ConnectionUtil.resetTestDatabase();
+        for (int i = 0; i < SEED_MESSAGES; i++) {
+            MessageService.newMessage(new Message(1, "seed message " + i, 1669947792L + i));
+        }
+    }
+
+    private static Result run(int connections, int warmupSeconds, int seconds) throws InterruptedException {
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        Result result = new Result();
+        ConnectionPool pool = ConnectionUtil.getPool();
+
+        // Open the connections gradually so the accept queue doesn't overflow.
+        long rampStep = Math.max(1, RAMP_UP_MILLIS * 1_000_000 / connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            String host = "127.0.0." + (1 + i / CONNECTIONS_PER_ADDRESS);
+            new Connection(client, URI.create("http://" + host + ":" + PORT), result).next();
+
+            long due = start + (i + 1) * rampStep;
+            long wait = due - System.nanoTime();
+            if (wait > 1_000_000) {
+                Thread.sleep(wait / 1_000_000);
+            }
+        }
+
+        Thread.sleep(warmupSeconds * 1000L);
+        long waitBefore = pool.getTotalWaitNanos();
+        long acquiresBefore = pool.getAcquireCount();
+        result.recording = true;
+        Thread.sleep(seconds * 1000L);
+        result.recording = false;
+        result.stopped = true;
+        long acquires = pool.getAcquireCount() - acquiresBefore;
+        result.dbWait = acquires == 0 ? "-" : String.format(Locale.ROOT, "%.2f ms",
+                (pool.getTotalWaitNanos() - waitBefore) / 1e6 / acquires);
+
+        // Let outstanding requests finish before the server goes away.
+        Thread.sleep(2000);
+        return result;
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static class Result {
+        final Histogram latency = new Histogram();
+        volatile boolean recording;
+        volatile boolean stopped;
+        long requests;
+        long errors;
+        String dbWait;
+
+        synchronized void record(long micros, boolean ok) {
+            if (!recording) {
+                return;
+            }
+            if (ok) {
+                requests++;
+                latency.record(micros);
+            } else {
+                errors++;
+            }
+        }
+    }
+
+    /**
+     * One client connection sending requests back to back.
+     */
+    private static class Connection {
+
+        private final HttpClient client;
+        private final URI base;
+        private final Result result;
+
+        Connection(HttpClient client, URI base, Result result) {
+            this.client = client;
+            this.base = base;
+            this.result = result;
+        }
+
+        void next() {
+            if (result.stopped) {
+                return;
+            }
+
+            HttpRequest request;
+            if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                request = HttpRequest.newBuilder(base.resolve("/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, "
+                                + "\"message_text\": \"benchmark message\", \"time_posted_epoch\": 1669947792}"))
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(60))
+                        .build();
+            } else {
+                request = HttpRequest.newBuilder(base.resolve("/messages?limit=20"))
+                        .timeout(Duration.ofSeconds(60))
+                        .build();
+            }
+
+            long sentAt = System.nanoTime();
+            CompletableFuture<HttpResponse<byte[]>> response = client.sendAsync(request,
+                    HttpResponse.BodyHandlers.ofByteArray());
+            response.whenComplete((r, e) -> {
+                result.record((System.nanoTime() - sentAt) / 1000, e == null && r.statusCode() == 200);
+                next();
+            });
+        }
+    }
+
+    /**
+     * Log-linear latency histogram in microseconds: exact below 16us, then 8 buckets per power of two (at most
+     * 12.5% error).
+     */
+    private static class Histogram {
+
+        private final AtomicLongArray counts = new AtomicLongArray(16 + 60 * 8);
+        private long max;
+        private long total;
+
+        void record(long micros) {
+            long value = Math.max(0, micros);
+            counts.incrementAndGet(index(value));
+            max = Math.max(max, value);
+            total++;
+        }
+
+        long percentile(double p) {
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        long max() {
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < 16) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & 7;
+            return 16 + (exponent - 4) * 8 + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < 16) {
+                return index;
+            }
+            int exponent = (index - 16) / 8 + 4;
+            int sub = (index - 16) % 8;
+            return ((8L + sub + 1) << (exponent - 3)) - 1;
+        }
+    }
+}
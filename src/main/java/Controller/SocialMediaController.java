@@ -2,18 +2,56 @@
 
 package Controller;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
 
+import DAO.RowCallback;
 import Model.Account;
 import Model.Message;
 import Service.AccountService;
+import Service.AsyncAccountService;
+import Service.AsyncFollowService;
+import Service.AsyncMessageService;
+import Service.EncodedMessagesCache;
+import Service.FollowService;
+import Service.MessageFeed;
+import Service.MessagePage;
 import Service.MessageService;
+import Util.JsonUtil;
+import Util.Metrics;
+import Util.ModelCodec;
+import Util.ModelJsonMapper;
+import Util.ServerThreadPool;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.websocket.WsConnectContext;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -21,6 +59,38 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+
+    /**
+     * When true (the default), the list endpoints write messages to the response a chunk at a time as they are read
+     * from the database instead of building the whole list and JSON String in memory first.
+     */
+    private static final boolean STREAM_LISTS = Boolean.parseBoolean(System.getProperty("socialmedia.streaming", "true"));
+
+    /**
+     * When true (the default), handlers hand their database work to the JDBC executor with ctx.future(...) and give
+     * the Jetty thread back while it runs, instead of blocking on JDBC themselves. Whole-list streaming stays on the
+     * request thread, since it writes to the client between its queries.
+     */
+    private static final boolean ASYNC = Boolean.parseBoolean(System.getProperty("socialmedia.async", "true"));
+
+    /**
+     * How many messages POST /messages/bulk inserts per JDBC batch, unless the request asks for another size with
+     * ?batch_size=. Each batch is its own transaction.
+     */
+    private static final int BULK_BATCH_SIZE = Integer.getInteger("socialmedia.bulk.batchSize", 1_000);
+    private static final int MAX_BULK_BATCH_SIZE = 10_000;
+
+    /**
+     * Paginated responses carry the cursor for the next page in this header. It is absent on the last page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // Request attribute holding System.nanoTime() from when the request came in, for Metrics
+    private static final String STARTED_AT = "socialmedia.startedAt";
+
+    // Each open /messages/live socket's subscription, by Javalin's session id
+    private final ConcurrentHashMap<String, MessageFeed.Subscription> liveSubscriptions = new ConcurrentHashMap<>();
+
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
@@ -28,18 +98,62 @@ public class SocialMediaController {
      */
     public Javalin startAPI() {
 
-        // Instantiate Javalin object
-        Javalin app = Javalin.create();
+        // Instantiate Javalin object. All JSON in and out goes through our shared mapper (see ModelJsonMapper), and
+        // requests run on platform or virtual threads depending on -Dsocialmedia.virtualThreads (see ServerThreadPool).
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(new ModelJsonMapper());
+            config.jetty.server(() -> new Server(ServerThreadPool.create()));
+            // The live feed pings every subscriber each pingMillis, which keeps its sockets from timing out; one that
+            // has taken in nothing for two pings has stopped reading
+            config.jetty.wsFactoryConfig(factory ->
+                    factory.setIdleTimeout(Duration.ofMillis(2 * MessageService.getFeed().getPingMillis())));
+            if (Metrics.ENABLED) {
+                // Runs once every request is finished, however it ended: after handlers are skipped when a future fails
+                config.requestLogger.http((context, executionTimeMs) -> recordRequest(context));
+            }
+        });
+
+        if (Metrics.ENABLED) {
+            app.before(context -> {
+                context.attribute(STARTED_AT, System.nanoTime());
+                Metrics.requestStarted();
+            });
+        }
 
         // ~~ ENDPOINTS ~~
         app.post("/register", this::registrationHandler);
         app.post("/login", this::loginHandler);
         app.post("/messages", this::newMessageHandler);
+        app.post("/messages/bulk", this::bulkMessagesHandler);
         app.get("/messages", this::getAllMessagesHandler);
+        // Before /messages/{message_id}, which would otherwise take "search" for a message_id
+        app.get("/messages/search", this::searchMessagesHandler);
         app.get("/messages/{message_id}", this::getMessageByIdHandler);
         app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
         app.patch("/messages/{message_id}", this::updateMessageByIdHandler);
         app.get("/accounts/{account_id}/messages", this::getMessagesFromAccountHandler);
+        app.post("/accounts/{account_id}/follow", this::followHandler);
+        app.delete("/accounts/{account_id}/follow", this::unfollowHandler);
+        app.get("/accounts/{account_id}/home", this::homeTimelineHandler);
+        app.get("/metrics", this::metricsHandler);
+        app.ws("/messages/live", ws -> {
+            ws.onConnect(this::liveConnectHandler);
+            ws.onClose(this::liveCloseHandler);
+            ws.onError(this::liveCloseHandler);
+        });
+
+        // The JDBC executor's queue is full, or the write batcher has shut down
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(503));
+
+        app.events(event -> {
+            // Know which accounts exist (and who follows them) before the first message comes in, and be ready for
+            // the first search
+            event.serverStarting(AccountService::loadAccounts);
+            event.serverStarting(FollowService::loadFollows);
+            event.serverStarting(MessageService::loadSearchIndex);
+            // Make sure every message we accepted is in the database before the app is considered stopped
+            event.serverStopped(MessageService::drainWrites);
+        });
 
         // Return Javalin app
         return app;
@@ -50,89 +164,118 @@ public class SocialMediaController {
 
     // 1. Registration
     // The Javalin Context object manages information about both the HTTP request and response.
-    private void registrationHandler(Context context) throws JsonProcessingException {
-
-        // The Jackson ObjectMapper class translates between JSON and Java.
-        ObjectMapper mapper = new ObjectMapper();
-        // Here, we're using it to create an Account object from a JSON String.
-        Account account = mapper.readValue(context.body(), Account.class);
-
-        // I'm using the object created from ObjectMapper as a parameter in the AccountService.addAccount method, which will ultimately result in an attempt to persist the new account to the database assuming some validation checks are passed. If it works, a new Account object will be returned, but because I don't know whether or not it will work, I'm using the Optional class, which allows for the possiblility that nothing will be returned.
-        Optional<Account> newAccount = AccountService.addAccount(account);
-
-        if (newAccount.isEmpty()) {  // If the Optional<Account> object is empty, 
-                                     // it means that some test was failed in the Service or DAO layer and the new Account was never created. Return status code 400 (client error).
-            context.status(400);
-        } else {  // On the other hand, if an Optional<Account> object was returned, 
-                  // return status code 200 OK (default) and the new account as a JSON String.
-            context.json(mapper.writeValueAsString(newAccount.get()));
-        }
+    private void registrationHandler(Context context) {
+
+        // The JsonMapper registered in startAPI() translates between JSON and Java.
+        // Here, we're using it to create an Account object straight from the request body.
+        Account account = context.bodyStreamAsClass(Account.class);
+
+        // I'm using the object created from the request body as a parameter in the AccountService.addAccount method, which will ultimately result in an attempt to persist the new account to the database assuming some validation checks are passed. If it works, a new Account object will be returned, but because I don't know whether or not it will work, I'm using the Optional class, which allows for the possiblility that nothing will be returned.
+        respond(context, () -> AsyncAccountService.addAccount(account), () -> AccountService.addAccount(account), newAccount -> {
+
+            if (newAccount.isEmpty()) {  // If the Optional<Account> object is empty, 
+                                         // it means that some test was failed in the Service or DAO layer and the new Account was never created. Return status code 400 (client error).
+                context.status(400);
+            } else {  // On the other hand, if an Optional<Account> object was returned, 
+                      // return status code 200 OK (default) and the new account as JSON.
+                context.jsonStream(newAccount.get());
+            }
+        });
     }
 
     // 2. Login
-    private void loginHandler(Context context) throws JsonProcessingException {
+    private void loginHandler(Context context) {
 
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(), Account.class);
+        Account account = context.bodyStreamAsClass(Account.class);
 
-        Optional<Account> loggedInAcc = AccountService.login(account);
+        respond(context, () -> AsyncAccountService.login(account), () -> AccountService.login(account), loggedInAcc -> {
 
-        if (loggedInAcc.isEmpty()) { // Unsuccessful logins return status code 401 (Unauthorized).
-            context.status(401);
+            if (loggedInAcc.isEmpty()) { // Unsuccessful logins return status code 401 (Unauthorized).
+                context.status(401);
 
-        } else {
-            context.json(mapper.writeValueAsString(loggedInAcc.get()));
-        }
+            } else {
+                context.jsonStream(loggedInAcc.get());
+            }
+        });
 
     }
 
     // 3. New message
-    private void newMessageHandler(Context context) throws JsonProcessingException {
+    private void newMessageHandler(Context context) {
 
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(context.body(), Message.class);
+        Message message = context.bodyStreamAsClass(Message.class);
 
-        Optional<Message> newMessage = MessageService.newMessage(message);
+        respond(context, () -> AsyncMessageService.newMessage(message), () -> MessageService.newMessage(message), newMessage -> {
 
-        if (newMessage.isEmpty()) {
-            context.status(400);
+            if (newMessage.isEmpty()) {
+                context.status(400);
 
-        } else {
-            context.json(mapper.writeValueAsString(newMessage.get()));
-        }
+            } else {
+                context.jsonStream(newMessage.get());
+            }
+        });
     }
 
     // 4. Return all messages
-    private void getAllMessagesHandler(Context context) throws JsonProcessingException {
+    private void getAllMessagesHandler(Context context) throws IOException, SQLException {
+
+        // Any message can be in any of these lists, so they all share the version of every message
+        if (notModified(context, MessageService.getVersions().getAllVersion())) {
+            return;
+        }
+
+        if (context.queryParam("ids") != null) {
+            lookupHandler(context);
+            return;
+        }
 
-        List<Message> messages = MessageService.getAllMessages();
+        if (context.queryParam("since") != null || context.queryParam("until") != null
+                || context.queryParam("posted_by") != null) {
+            timeRangeHandler(context);
+            return;
+        }
+
+        if (isPageRequest(context)) {
+            pageHandler(context, AsyncMessageService::getMessagePage, MessageService::getMessagePage);
+            return;
+        }
 
-        ObjectMapper mapper = new ObjectMapper();
+        // Nothing has changed since the whole list was last encoded, so just copy it out
+        EncodedMessagesCache.Body encoded = MessageService.getEncodedMessages();
+        if (encoded != null) {
+            writeEncoded(context, encoded);
+            return;
+        }
+
+        if (STREAM_LISTS) {
+            streamMessages(context, MessageService::streamAllMessages);
+            return;
+        }
 
-        context.json(mapper.writeValueAsString(messages));
+        respond(context, AsyncMessageService::getAllMessages, MessageService::getAllMessages, context::jsonStream);
         
     }
     
     // 5. Get message by ID
-    private void getMessageByIdHandler(Context context) throws JsonProcessingException {
-
-        ObjectMapper mapper = new ObjectMapper();
+    private void getMessageByIdHandler(Context context) {
 
         String[] urlSplit = context.url().split("/");
         int messageIndex = Integer.parseInt(urlSplit[urlSplit.length - 1]);
 
-        Optional<Message> message = MessageService.getMessageById(messageIndex);
-
-        if (message.isPresent()) {
-            context.json(mapper.writeValueAsString(message.get()));
+        if (notModified(context, MessageService.getVersions().getMessageVersion(messageIndex))) {
+            return;
         }
+
+        respond(context, () -> AsyncMessageService.getMessageById(messageIndex), () -> MessageService.getMessageById(messageIndex), message -> {
+
+            if (message.isPresent()) {
+                context.jsonStream(message.get());
+            }
+        });
     }
 
     // 6. Delete message by ID
-    private void deleteMessageByIdHandler(Context context) throws JsonProcessingException{
-
-        // Instantiate Mapper
-        ObjectMapper mapper = new ObjectMapper();
+    private void deleteMessageByIdHandler(Context context) {
 
         // Split URL on slashes
         String[] urlSplit = context.url().split("/");
@@ -140,47 +283,560 @@ public class SocialMediaController {
         int messageToDeleteIndex = Integer.parseInt(urlSplit[urlSplit.length - 1]);
 
         // Pass to Service layer
-        Optional<Message> deletedMessage = MessageService.deleteMessage(messageToDeleteIndex);
-
+        respond(context, () -> AsyncMessageService.deleteMessage(messageToDeleteIndex), () -> MessageService.deleteMessage(messageToDeleteIndex), deletedMessage -> {
 
-        if (deletedMessage.isPresent()) {
-            context.json(mapper.writeValueAsString(deletedMessage.get()));
-        }
+            if (deletedMessage.isPresent()) {
+                context.jsonStream(deletedMessage.get());
+            }
+        });
 
     }
 
     // 7. Update message by ID
-    private void updateMessageByIdHandler(Context context) throws JsonProcessingException {
-
-        ObjectMapper mapper = new ObjectMapper();
+    private void updateMessageByIdHandler(Context context) {
 
         String[] urlSplit = context.url().split("/");
         int messageIdToUpdate = Integer.parseInt(urlSplit[urlSplit.length - 1]);
 
         // New Message object fron JSON. 
-        // Note: This worked even though I'm only passing in an ID and message_text, and there is no such constructor in the Message object. Jackson uses the default constructor and fills in default values for missing parameters.
-        Message newMessage = mapper.readValue(context.body(), Message.class);
+        // Note: This worked even though I'm only passing in an ID and message_text, and there is no such constructor in the Message object. The mapper uses the default constructor and fills in default values for missing parameters.
+        Message newMessage = context.bodyStreamAsClass(Message.class);
 
-        Optional<Message> updatedMessage = MessageService.updateMessage(messageIdToUpdate, newMessage.getMessage_text());
+        String text = newMessage.getMessage_text();
+        respond(context, () -> AsyncMessageService.updateMessage(messageIdToUpdate, text), () -> MessageService.updateMessage(messageIdToUpdate, text), updatedMessage -> {
 
-        if (updatedMessage.isPresent()) {
-            context.json(mapper.writeValueAsString(updatedMessage.get()));
-        } else {
-            context.status(400);
-        }
+            if (updatedMessage.isPresent()) {
+                context.jsonStream(updatedMessage.get());
+            } else {
+                context.status(400);
+            }
+        });
 
     }
     
     // 8. Get user messages
-    private void getMessagesFromAccountHandler(Context context) throws JsonProcessingException {
+    private void getMessagesFromAccountHandler(Context context) throws IOException, SQLException {
 
         String[] urlSplit = context.url().split("/");
         int userIndex = Integer.parseInt(urlSplit[urlSplit.length - 2]); // Because the endpoint is ..../{account_id}/messages
 
-        List<Message> messages = MessageService.getMessagesByUserId(userIndex);
+        if (notModified(context, MessageService.getVersions().getAccountVersion(userIndex))) {
+            return;
+        }
+
+        if (isPageRequest(context)) {
+            pageHandler(context, (after, limit) -> AsyncMessageService.getMessagePageByUserId(userIndex, after, limit),
+                    (after, limit) -> MessageService.getMessagePageByUserId(userIndex, after, limit));
+            return;
+        }
+
+        if (STREAM_LISTS) {
+            streamMessages(context, callback -> MessageService.streamMessagesByUserId(userIndex, callback));
+            return;
+        }
+
+        respond(context, () -> AsyncMessageService.getMessagesByUserId(userIndex), () -> MessageService.getMessagesByUserId(userIndex), context::jsonStream);
+    }
+
+
+    // 4b. Multi-get
+    // GET /messages?ids=3,1,2 returns the messages with those ids that exist, in the order they were asked for. One
+    // request instead of a GET /messages/{message_id} per message, and one query for whatever isn't cached.
+    private void lookupHandler(Context context) {
+
+        String[] idParams = context.queryParam("ids").split(",");
+        int[] ids = new int[idParams.length];
+        int count = 0;
+        try {
+            for (String idParam : idParams) {
+                if (!idParam.isBlank()) {
+                    ids[count++] = Integer.parseInt(idParam.trim());
+                }
+            }
+        } catch (NumberFormatException e) {
+            context.status(400);
+            return;
+        }
+        if (count > MessageService.MAX_LOOKUP_IDS) {
+            context.status(400);
+            return;
+        }
+
+        int[] messageIds = Arrays.copyOf(ids, count);
+        respond(context, () -> AsyncMessageService.getMessagesByIds(messageIds), () -> MessageService.getMessagesByIds(messageIds), context::jsonStream);
+    }
+
+    // 4c. Messages posted in a time range, in time order: ?since= (inclusive) and ?until= (exclusive) in epoch
+    // seconds, either of which may be left out, optionally only from ?posted_by=. Streamed, or paged like the other
+    // lists with ?limit=&after=.
+    private void timeRangeHandler(Context context) throws IOException, SQLException {
+
+        long since;
+        long until;
+        Integer postedBy;
+        try {
+            String sinceParam = context.queryParam("since");
+            String untilParam = context.queryParam("until");
+            String postedByParam = context.queryParam("posted_by");
+            since = sinceParam == null ? Long.MIN_VALUE : Long.parseLong(sinceParam);
+            until = untilParam == null ? Long.MAX_VALUE : Long.parseLong(untilParam);
+            postedBy = postedByParam == null ? null : Integer.valueOf(postedByParam);
+        } catch (NumberFormatException e) {
+            context.status(400);
+            return;
+        }
+        if (since > until) {
+            context.status(400);
+            return;
+        }
+
+        if (isPageRequest(context)) {
+            pageHandler(context,
+                    (after, limit) -> AsyncMessageService.getMessagePageInTimeRange(postedBy, since, until, after, limit),
+                    (after, limit) -> MessageService.getMessagePageInTimeRange(postedBy, since, until, after, limit));
+            return;
+        }
+
+        if (STREAM_LISTS) {
+            streamMessages(context, callback -> MessageService.streamMessagesInTimeRange(postedBy, since, until,
+                    callback));
+            return;
+        }
+
+        respond(context, () -> AsyncMessageService.getMessagesInTimeRange(postedBy, since, until),
+                () -> MessageService.getMessagesInTimeRange(postedBy, since, until), context::jsonStream);
+    }
+
+    // 9. Bulk insert
+    // Takes a JSON array of messages, or NDJSON (a stream of message objects, one per line), and inserts them in
+    // batches. This runs on the request thread - it reads the request and writes the response for as long as it takes.
+    // The response is in the same shape as the request and streamed out a batch at a time, with one result per input
+    // message, in order: {"index":0,"message":{...}} if it was inserted, {"index":1,"error":"..."} if it wasn't.
+    // Results start coming back before the whole request has been read, so for big uploads the client has to read
+    // the response while it is still sending (curl does; java.net.http.HttpClient doesn't).
+    private void bulkMessagesHandler(Context context) throws IOException {
+
+        int batchSize;
+        try {
+            String batchSizeParam = context.queryParam("batch_size");
+            batchSize = batchSizeParam == null ? BULK_BATCH_SIZE : Integer.parseInt(batchSizeParam);
+        } catch (NumberFormatException e) {
+            context.status(400);
+            return;
+        }
+        if (batchSize < 1 || batchSize > MAX_BULK_BATCH_SIZE) {
+            context.status(400);
+            return;
+        }
+
+        try (JsonParser parser = JsonUtil.MAPPER.getFactory().createParser(context.bodyInputStream())) {
+
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (token != null && !array && token != JsonToken.START_OBJECT) {
+                context.status(400);
+                return;
+            }
+
+            context.contentType(array ? ContentType.APPLICATION_JSON.getMimeType() : "application/x-ndjson");
+            try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(context.outputStream())) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                if (array) {
+                    generator.writeStartArray();
+                    token = parser.nextToken();
+                }
+
+                List<Message> batch = new ArrayList<>(Math.min(batchSize, 1_000));
+                int index = 0;
+                String parseError = null;
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    try {
+                        batch.add(readMessage(parser));
+                    } catch (JsonProcessingException e) {
+                        // We can't tell where the next message starts, so this is as far as we can go
+                        parseError = e.getOriginalMessage();
+                        break;
+                    }
+                    if (batch.size() == batchSize) {
+                        index = writeBulkResults(generator, batch, index);
+                        batch.clear();
+                    }
+                    token = parser.nextToken();
+                }
+                index = writeBulkResults(generator, batch, index);
+
+                if (parseError != null) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("index", index);
+                    generator.writeStringField("error", "Malformed JSON: " + parseError);
+                    generator.writeEndObject();
+                }
+                if (array) {
+                    generator.writeEndArray();
+                } else if (index > 0 || parseError != null) {
+                    generator.writeRaw('\n');
+                }
+            }
+        } catch (JsonProcessingException e) { // Not even the first token made sense
+            context.status(400);
+        }
+    }
+
+    // Inserts one batch and writes a result for each message in it. Returns the index of the next message.
+    private int writeBulkResults(JsonGenerator generator, List<Message> batch, int index) throws IOException {
+
+        List<Optional<Message>> results = MessageService.newMessages(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("index", index++);
+            if (results.get(i).isPresent()) {
+                generator.writeFieldName("message");
+                writeMessage(generator, results.get(i).get());
+            } else if (!MessageService.isValidText(batch.get(i).getMessage_text())) {
+                generator.writeStringField("error", "message_text must be between 1 and 254 characters");
+            } else if (!AccountService.accountExists(batch.get(i).getPosted_by())) {
+                generator.writeStringField("error", "posted_by does not exist");
+            } else {
+                generator.writeStringField("error", "Could not insert message. Does posted_by exist?");
+            }
+            generator.writeEndObject();
+        }
+        // Send this batch's results now rather than when the buffer fills up
+        generator.flush();
+        return index;
+    }
+
+    // 10. Metrics, in the Prometheus text format
+    private void metricsHandler(Context context) {
+        context.contentType("text/plain; version=0.0.4; charset=utf-8").result(Metrics.scrape());
+    }
+
+    // 11. Search messages, most recent first, a page at a time
+    private void searchMessagesHandler(Context context) {
+
+        String query = context.queryParam("q");
+        if (query == null || query.isBlank()) {
+            context.status(400);
+            return;
+        }
+
+        pageHandler(context, (after, limit) -> AsyncMessageService.searchMessages(query, after, limit),
+                (after, limit) -> MessageService.searchMessages(query, after, limit));
+    }
+
+    // 12. Follow and unfollow
+    // POST /accounts/{account_id}/follow with the follower in the body, e.g. {"account_id": 2}, makes account 2 follow
+    // {account_id}, and DELETE makes it stop. Doing either twice is fine. 400 if either account doesn't exist, or they
+    // are the same account.
+    private void followHandler(Context context) {
+
+        String[] urlSplit = context.url().split("/");
+        int followeeId = Integer.parseInt(urlSplit[urlSplit.length - 2]); // Because the endpoint is ..../{account_id}/follow
+        Account follower = context.bodyStreamAsClass(Account.class);
+        int followerId = follower.getAccount_id();
 
-        ObjectMapper mapper = new ObjectMapper();
-        context.json(mapper.writeValueAsString(messages));
+        respond(context, () -> AsyncFollowService.follow(followerId, followeeId), () -> FollowService.follow(followerId, followeeId), followed -> {
+
+            if (!followed) {
+                context.status(400);
+            }
+        });
+    }
+
+    private void unfollowHandler(Context context) {
+
+        String[] urlSplit = context.url().split("/");
+        int followeeId = Integer.parseInt(urlSplit[urlSplit.length - 2]);
+        Account follower = context.bodyStreamAsClass(Account.class);
+        int followerId = follower.getAccount_id();
+
+        respond(context, () -> AsyncFollowService.unfollow(followerId, followeeId), () -> FollowService.unfollow(followerId, followeeId), unfollowed -> {
+
+            if (!unfollowed) {
+                context.status(400);
+            }
+        });
+    }
+
+    // 13. Home timeline
+    // Messages from the accounts {account_id} follows, newest first, always a page at a time (?limit= defaults to
+    // DEFAULT_PAGE_SIZE).
+    private void homeTimelineHandler(Context context) {
+
+        String[] urlSplit = context.url().split("/");
+        int accountId = Integer.parseInt(urlSplit[urlSplit.length - 2]); // Because the endpoint is ..../{account_id}/home
+
+        pageHandler(context, (after, limit) -> AsyncFollowService.getHomePage(accountId, after, limit),
+                (after, limit) -> FollowService.getHomePage(accountId, after, limit));
+    }
+
+    // 14. Live messages
+    // A WebSocket that is sent {"event": "created" | "updated" | "deleted", "message": {...}} for every message change
+    // as it is committed, or only for one account's messages with ?posted_by=. POST /messages/bulk sends
+    // {"event": "created", "messages": [...]} instead, a frame per MessageFeed.FRAME_MESSAGES messages. Replaces polling
+    // GET /messages. See MessageFeed for how slow subscribers are dealt with.
+    private void liveConnectHandler(WsConnectContext context) {
+
+        Integer postedBy;
+        try {
+            String postedByParam = context.queryParam("posted_by");
+            postedBy = postedByParam == null ? null : Integer.valueOf(postedByParam);
+        } catch (NumberFormatException e) {
+            context.closeSession(StatusCode.POLICY_VIOLATION, "posted_by must be a number");
+            return;
+        }
+
+        MessageFeed.Subscription subscription = MessageService.getFeed().subscribe(postedBy, new WebSocketSink(context.session));
+        liveSubscriptions.put(context.getSessionId(), subscription);
+    }
+
+    private void liveCloseHandler(WsContext context) {
+
+        MessageFeed.Subscription subscription = liveSubscriptions.remove(context.getSessionId());
+        if (subscription != null) {
+            MessageService.getFeed().unsubscribe(subscription);
+        }
+    }
+
+    private Message readMessage(JsonParser parser) throws IOException {
+        return ModelJsonMapper.USE_CODEC ? ModelCodec.readMessage(parser) : JsonUtil.MESSAGE_READER.readValue(parser);
+    }
+
+    private void writeMessage(JsonGenerator generator, Message message) throws IOException {
+        if (ModelJsonMapper.USE_CODEC) {
+            ModelCodec.writeMessage(generator, message);
+        } else {
+            JsonUtil.MESSAGE_WRITER.writeValue(generator, message);
+        }
+    }
+
+
+    // ~~ METRICS ~~
+
+    private void recordRequest(Context context) {
+        Long startedAt = context.attribute(STARTED_AT);
+        if (startedAt != null) {
+            // A request that matched no endpoint (a 404) never got past the before handlers, and then Javalin won't
+            // give out an endpoint path
+            String route = context.handlerType() == HandlerType.BEFORE ? null : context.endpointHandlerPath();
+            Metrics.requestFinished(context.method().name(), route, context.statusCode(),
+                    System.nanoTime() - startedAt);
+        }
+    }
+
+    // ~~ CONDITIONAL GET ~~
+
+    // Tags the response with the version its contents are read at, and answers 304 Not Modified with no body if the
+    // client's If-None-Match already has that tag. Called before the handler reads anything, so a client polling an
+    // unchanged list costs no query and no serialization. Returns true if the response is done.
+    private boolean notModified(Context context, long version) {
+
+        String etag = "W/\"" + Long.toHexString(MessageService.getVersions().getEpoch()) + "-"
+                + Long.toHexString(version) + "\"";
+        context.header(Header.ETAG, etag);
+
+        String ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        // A list of tags, compared weakly: W/"x" matches "x"
+        String opaqueTag = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(opaqueTag)) {
+                context.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ~~ PRE-ENCODED RESPONSES ~~
+
+    // Writes a cached body straight to the servlet response, gzipped if the client accepts it. This goes around
+    // Javalin's output stream, which would otherwise gzip it again on every request.
+    private void writeEncoded(Context context, EncodedMessagesCache.Body encoded) throws IOException {
+
+        boolean gzip = acceptsGzip(context.header(Header.ACCEPT_ENCODING));
+        byte[] body = gzip ? encoded.getGzip() : encoded.getJson();
+
+        context.contentType(ContentType.APPLICATION_JSON);
+        context.header(Header.VARY, Header.ACCEPT_ENCODING);
+        if (gzip) {
+            context.header(Header.CONTENT_ENCODING, "gzip");
+        }
+        context.res().setContentLength(body.length);
+        context.res().getOutputStream().write(body);
+    }
+
+    // Whether an Accept-Encoding header such as "gzip, deflate, br" or "*;q=0.5" allows gzip. A q=0 on gzip itself, or on
+    // * when gzip isn't named, rules it out.
+    private static boolean acceptsGzip(String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                return hasNonZeroQ(parts);
+            } else if (name.equals("*")) {
+                any = hasNonZeroQ(parts);
+            }
+        }
+        return any != null && any;
+    }
+
+    private static boolean hasNonZeroQ(String[] codingParts) {
+
+        for (int i = 1; i < codingParts.length; i++) {
+            String parameter = codingParts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // ~~ PAGINATION ~~
+
+    // The list endpoints only paginate when asked to, so existing clients keep getting the full list.
+    private boolean isPageRequest(Context context) {
+        return context.queryParam("limit") != null || context.queryParam("after") != null;
+    }
+
+    // Handles ?limit=&after= for a list endpoint. A page is bounded by MAX_PAGE_SIZE, so unlike the streaming path
+    // it is fine to build it in memory - which also lets us set the next-cursor header before writing the body.
+    private void pageHandler(Context context, BiFunction<String, Integer, CompletableFuture<MessagePage>> asyncLoader,
+            BiFunction<String, Integer, MessagePage> loader) {
+
+        String after = context.queryParam("after");
+        int limit;
+        try {
+            String limitParam = context.queryParam("limit");
+            limit = limitParam == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            context.status(400);
+            return;
+        }
+
+        if (ASYNC) {
+            context.future(() -> asyncLoader.apply(after, limit).handle((page, error) -> {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof IllegalArgumentException) { // Bad limit or cursor
+                    context.status(400);
+                } else if (cause != null) {
+                    throw new CompletionException(cause);
+                } else {
+                    writePage(context, page);
+                }
+                return null;
+            }));
+            return;
+        }
+
+        MessagePage page;
+        try {
+            page = loader.apply(after, limit);
+        } catch (IllegalArgumentException e) { // Bad limit or cursor
+            context.status(400);
+            return;
+        }
+        writePage(context, page);
+    }
+
+    private void writePage(Context context, MessagePage page) {
+
+        if (page.getNextCursor() != null) {
+            context.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        context.jsonStream(page.getMessages());
+    }
+
+    // ~~ ASYNC ~~
+
+    // Gets a result and hands it to responder. With ASYNC on, the result comes from asyncCall via ctx.future(...), so
+    // this thread is free as soon as the call is queued and responder runs on whichever thread completes the future.
+    // Otherwise syncCall runs right here.
+    private <T> void respond(Context context, Supplier<CompletableFuture<T>> asyncCall, Supplier<T> syncCall,
+            Consumer<T> responder) {
+
+        if (ASYNC) {
+            context.future(() -> asyncCall.get().thenAccept(responder));
+        } else {
+            responder.accept(syncCall.get());
+        }
+    }
+
+    // ~~ LIVE FEED ~~
+
+    // Sends to a WebSocket without blocking: Jetty queues the frame and calls back once it has been written. (Javalin's
+    // WsContext.send() waits for the write instead, so one slow client would hold up every other subscriber.)
+    private static class WebSocketSink implements MessageFeed.Sink {
+
+        private final Session session;
+
+        WebSocketSink(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void send(String text, Runnable done) {
+            session.getRemote().sendString(text, callback(done));
+        }
+
+        @Override
+        public void ping(Runnable done) {
+            session.getRemote().sendPing(ByteBuffer.allocate(0), callback(done));
+        }
+
+        @Override
+        public void close(String reason) {
+            session.close(StatusCode.POLICY_VIOLATION, reason);
+        }
+
+        private static WriteCallback callback(Runnable done) {
+            return new WriteCallback() {
+                @Override
+                public void writeFailed(Throwable error) {
+                    done.run();
+                }
+
+                @Override
+                public void writeSuccess() {
+                    done.run();
+                }
+            };
+        }
+    }
+
+    // ~~ STREAMING ~~
+
+    // A query that pushes its rows into a callback, e.g. MessageService::streamAllMessages.
+    private interface MessageStream {
+        void forEach(RowCallback<Message> callback) throws SQLException, IOException;
+    }
+
+    // Writes a JSON array to the response as the DAO reads it, a chunk of rows at a time. Nothing but the current
+    // chunk and the generator's small buffer is held in memory, and no connection is held while writing.
+    private void streamMessages(Context context, MessageStream messages) throws IOException, SQLException {
+
+        context.contentType(ContentType.APPLICATION_JSON);
+
+        // If the read fails partway, the array must stay unclosed: a client that got a 200 should see a broken body,
+        // not a shorter list that looks complete
+        try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(context.outputStream())
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)) {
+            generator.writeStartArray();
+            messages.forEach(message -> writeMessage(generator, message));
+            generator.writeEndArray();
+        }
     }
 
-}
\ No newline at end of file
+}
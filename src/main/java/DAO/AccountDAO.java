@@ -2,46 +2,33 @@
 
 package DAO;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.List;
 import java.util.Optional;
 
 import Model.Account;
-import Util.ConnectionUtil;
+import Util.Metrics;
 
 /**
  * AccountDAO
  */
 public class AccountDAO {
 
+  private static final Metrics.Operation ADD_ACCOUNT = Metrics.operation("AccountDAO.addAccount");
+  private static final Metrics.Operation GET_ALL_ACCOUNTS = Metrics.operation("AccountDAO.getAllAccounts");
+  private static final Metrics.Operation LOGIN = Metrics.operation("AccountDAO.login");
+
   public static Optional<Account> addAccount(Account account) {
 
     try {
 
-      Connection connection = ConnectionUtil.getConnection();
-
       // SQL logic
       String sql = "insert into account values (default, ?, ?)";
 
-      PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-      statement.setString(1, account.getUsername());
-      statement.setString(2, account.getPassword());
-
-      statement.executeUpdate();
+      Optional<Integer> account_id = ADD_ACCOUNT.time(() -> Sql.insert(sql, account.getUsername(),
+          account.getPassword()));
 
-      ResultSet rs = statement.getGeneratedKeys();
-
-      if (rs.next()) {
-        int account_id = rs.getInt(1);
-        Account newAcc = new Account(account_id, account.getUsername(), account.getPassword());
-        return Optional.of(newAcc);
-      }
-
-      // connection.close();
+      return account_id.map(id -> new Account(id, account.getUsername(), account.getPassword()));
 
     // SQL exception will be thrown if the username is already taken because it's defined as unique in SocialMedia.sql
     } catch (SQLException e) {
@@ -51,34 +38,24 @@ public class AccountDAO {
       return Optional.empty();
     }
 
-    // If the try block is unsuccessful for some other reason, also return an empty Optional.
-    return Optional.empty();
+  }
+
+  /**
+   * Lets SQLExceptions through, so the caller can tell "no accounts" apart from "the query failed".
+   * @return every account
+   */
+  public static List<Account> getAllAccounts() throws SQLException {
 
+    return GET_ALL_ACCOUNTS.time(() -> Sql.list("select * from account", RowMappers.ACCOUNT));
   }
 
   public static Optional<Account> login(Account account) {
 
     try {
 
-      Connection connection = ConnectionUtil.getConnection();
-
       String sql = "select * from account where username = ? and password = ?";
 
-      PreparedStatement statement = connection.prepareStatement(sql);
-
-      statement.setString(1, account.getUsername());
-      statement.setString(2, account.getPassword());
-
-      // This part is a little different from the first DAO method because queries require a different execute method and I don't have to worry about returning generated keys because queries automatically return a result set.
-      ResultSet rs = statement.executeQuery();
-
-      if (rs.next()) {
-        int account_id = (int) rs.getLong(1);
-        Account loggedInAcc = new Account(account_id, account.getUsername(), account.getPassword());
-        return Optional.of(loggedInAcc);
-      }
-
-      // connection.close();
+      return LOGIN.time(() -> Sql.first(sql, RowMappers.ACCOUNT, account.getUsername(), account.getPassword()));
 
     } catch (SQLException e) {
 
@@ -88,7 +65,5 @@ public class AccountDAO {
 
     }
 
-    return Optional.empty();
-
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package DAO;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import Util.Metrics;
+
+/* Follow Table:
+ * follower_id int,
+ * followee_id int,
+ * primary key (follower_id, followee_id),
+ * foreign key (follower_id) references account(account_id),
+ * foreign key (followee_id) references account(account_id)
+ */
+
+/**
+ * FollowDAO. A row means follower_id follows followee_id.
+ */
+public class FollowDAO {
+
+  private static final Metrics.Operation FOLLOW = Metrics.operation("FollowDAO.follow");
+  private static final Metrics.Operation UNFOLLOW = Metrics.operation("FollowDAO.unfollow");
+  private static final Metrics.Operation GET_ALL_FOLLOWS = Metrics.operation("FollowDAO.getAllFollows");
+
+  /**
+   * Adds the follow if it isn't there already. A merge rather than an insert, so following twice (or two requests
+   * racing to follow) isn't an error.
+   * @return false if the follow couldn't be written, e.g. because one of the accounts doesn't exist
+   */
+  public static boolean follow(int followerId, int followeeId) {
+
+    try {
+      String sql = "merge into follow (follower_id, followee_id) key (follower_id, followee_id) values (?, ?)";
+      FOLLOW.time(() -> Sql.update(sql, followerId, followeeId));
+      return true;
+
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * @return false if the follow couldn't be removed. Removing one that isn't there succeeds.
+   */
+  public static boolean unfollow(int followerId, int followeeId) {
+
+    try {
+      String sql = "delete from follow where follower_id = ? and followee_id = ?";
+      UNFOLLOW.time(() -> Sql.update(sql, followerId, followeeId));
+      return true;
+
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Lets SQLExceptions through, like AccountDAO.getAllAccounts().
+   * @return every follow as a {follower_id, followee_id} pair
+   */
+  public static List<int[]> getAllFollows() throws SQLException {
+
+    return GET_ALL_FOLLOWS.time(() -> Sql.list("select follower_id, followee_id from follow",
+        rs -> new int[] { rs.getInt("follower_id"), rs.getInt("followee_id") }));
+  }
+}
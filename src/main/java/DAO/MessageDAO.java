@@ -1,16 +1,15 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 /* Message Model:
  * public int message_id;
@@ -24,38 +23,62 @@ import Util.ConnectionUtil;
  * posted_by int,
  * message_text varchar(255),
  * time_posted_epoch bigint,
+ * deleted boolean default false not null,
  * foreign key (posted_by) references  account(account_id)
  */
 
+// All SQL goes through Sql, which closes every statement and result set and reuses prepared statements, and rows
+// are turned into Messages by RowMappers.MESSAGE.
+//
+// Deleting a message only marks it deleted (a tombstone), and every read skips tombstones. They are removed for good
+// later, a batch at a time, by purgeDeletedMessages().
+//
+// Each public method is timed by its own Metrics.Operation, exported on /metrics.
 public class MessageDAO {
 
+  private static final Metrics.Operation NEW_MESSAGE = Metrics.operation("MessageDAO.newMessage");
+  private static final Metrics.Operation NEW_MESSAGES = Metrics.operation("MessageDAO.newMessages");
+  private static final Metrics.Operation GET_ALL_MESSAGES = Metrics.operation("MessageDAO.getAllMessages");
+  private static final Metrics.Operation STREAM_ALL_MESSAGES = Metrics.operation("MessageDAO.streamAllMessages");
+  private static final Metrics.Operation GET_MESSAGE_BY_ID = Metrics.operation("MessageDAO.getMessageById");
+  private static final Metrics.Operation DELETE_MESSAGE = Metrics.operation("MessageDAO.deleteMessage");
+  private static final Metrics.Operation UPDATE_MESSAGE = Metrics.operation("MessageDAO.updateMessage");
+  private static final Metrics.Operation GET_MESSAGES_BY_USER_ID = Metrics.operation("MessageDAO.getMessagesByUserId");
+  private static final Metrics.Operation GET_MESSAGES_AFTER = Metrics.operation("MessageDAO.getMessagesAfter");
+  private static final Metrics.Operation GET_MESSAGES_BY_IDS = Metrics.operation("MessageDAO.getMessagesByIds");
+  private static final Metrics.Operation GET_MESSAGES_BY_USER_ID_AFTER =
+      Metrics.operation("MessageDAO.getMessagesByUserIdAfter");
+  private static final Metrics.Operation GET_MESSAGE_IDS_BY_USER_IDS_BEFORE =
+      Metrics.operation("MessageDAO.getMessageIdsByUserIdsBefore");
+  private static final Metrics.Operation STREAM_MESSAGES_BY_USER_ID =
+      Metrics.operation("MessageDAO.streamMessagesByUserId");
+  private static final Metrics.Operation GET_MESSAGES_IN_TIME_RANGE =
+      Metrics.operation("MessageDAO.getMessagesInTimeRange");
+  private static final Metrics.Operation STREAM_MESSAGES_IN_TIME_RANGE =
+      Metrics.operation("MessageDAO.streamMessagesInTimeRange");
+  private static final Metrics.Operation PURGE_DELETED_MESSAGES = Metrics.operation("MessageDAO.purgeDeletedMessages");
+
+  /**
+   * How many rows the streaming methods read per query.
+   */
+  private static final int FETCH_SIZE = Integer.getInteger("socialmedia.messages.fetchSize", 500);
+
+  /**
+   * How many accounts getMessageIdsByUserIdsBefore() reads per statement.
+   */
+  private static final int UNION_ACCOUNTS = 16;
+  private static final String[] NEWEST_IDS_SQL = newestIdsSql();
+
   public static Optional<Message> newMessage(Message message) {
 
     try {
+      String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)";
 
-      Connection connection = ConnectionUtil.getConnection();
-
-      String sql = "insert into message values (default, ?, ?, ?)";
-
-      PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-      // Gotta remember to add the Statement.GET_GENERATED_KEYS parameter when I need to use the getGeneratedKeys() method below.
+      Optional<Integer> message_id = NEW_MESSAGE.time(() -> Sql.insert(sql, message.getPosted_by(),
+          message.getMessage_text(), message.getTime_posted_epoch()));
 
-      statement.setInt(1, message.getPosted_by());
-      statement.setString(2, message.getMessage_text());
-      statement.setLong(3, message.getTime_posted_epoch());
-
-      statement.executeUpdate();
-
-      ResultSet rs = statement.getGeneratedKeys();
-
-      if (rs.next()) {
-        int message_id = rs.getInt(1);
-        Message newMessage = new Message(message_id, message.getPosted_by(), message.getMessage_text(),
-            message.getTime_posted_epoch());
-        return Optional.of(newMessage);
-      }
-
-      // connection.close();
+      return message_id.map(id -> new Message(id, message.getPosted_by(), message.getMessage_text(),
+          message.getTime_posted_epoch()));
 
     } catch (SQLException e) {
 
@@ -65,64 +88,85 @@ public class MessageDAO {
 
     }
 
-    return Optional.empty();
-
   }
 
-  public static List<Message> getAllMessages() {
+  /**
+   * Inserts messages as one JDBC batch in a single transaction.
+   * @return the inserted messages with their generated message_ids, in the same order
+   * @throws SQLException if any row fails, in which case none are inserted (a BatchUpdateException for a bad row)
+   */
+  public static List<Message> newMessages(List<Message> messages) throws SQLException {
 
-    List<Message> messages = new ArrayList<>();
+    if (messages.isEmpty()) {
+      return new ArrayList<>();
+    }
 
-    try {
+    return NEW_MESSAGES.time(() -> insertMessages(messages));
+  }
 
-      Connection connection = ConnectionUtil.getConnection();
+  private static List<Message> insertMessages(List<Message> messages) throws SQLException {
 
-      String sql = "select * from message";
+    try (Connection connection = ConnectionUtil.getConnection()) {
 
-      Statement statement = connection.createStatement();
-      // Remember that connection.prepareStatement(sql) is only for prepared statements. For regular statements it's .createStatement() with no parameters passed.
-      ResultSet rs = statement.executeQuery(sql);
+      String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)";
 
-      while (rs.next()) {
-        int message_id = rs.getInt("message_id");
-        int posted_by = rs.getInt("posted_by");
-        String message_text = rs.getString("message_text");
-        long time_posted_epoch = rs.getLong("time_posted_epoch");
-        Message nextMessage = new Message(message_id, posted_by, message_text, time_posted_epoch);
-        messages.add(nextMessage);
+      List<Object[]> rows = new ArrayList<>(messages.size());
+      for (Message message : messages) {
+        rows.add(new Object[] { message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch() });
+      }
 
+      connection.setAutoCommit(false);
+      List<Integer> ids;
+      try {
+        ids = Sql.insertBatch(connection, sql, rows);
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
       }
 
-      // connection.close();
+      List<Message> newMessages = new ArrayList<>(messages.size());
+      for (int i = 0; i < messages.size(); i++) {
+        Message message = messages.get(i);
+        newMessages.add(new Message(ids.get(i), message.getPosted_by(), message.getMessage_text(),
+            message.getTime_posted_epoch()));
+      }
 
-    } catch (SQLException e) {
-      e.printStackTrace();
+      // The pool turns autocommit back on when the connection is returned.
+      return newMessages;
     }
-    return messages;
   }
 
-  public static Optional<Message> getMessageById(int id) {
+  public static List<Message> getAllMessages() {
 
     try {
+      return GET_ALL_MESSAGES.time(() -> Sql.list("select * from message where not deleted", RowMappers.MESSAGE));
 
-      Connection connection = ConnectionUtil.getConnection();
-
-      String sql = "select * from message where message_id = ?";
-      PreparedStatement statement = connection.prepareStatement(sql);
-      statement.setInt(1, id);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
+  }
 
-      ResultSet rs = statement.executeQuery();
+  /**
+   * Like getAllMessages(), but hands the rows to the callback FETCH_SIZE at a time instead of collecting them into a
+   * list, so memory use doesn't grow with the size of the table. Rows come in message_id order, read a chunk at a time
+   * like getMessagesAfter(), and no connection is held while the callback runs. Like paging, a message written while
+   * the stream is under way may or may not be included.
+   */
+  public static void streamAllMessages(RowCallback<Message> callback) throws SQLException, IOException {
+
+    String sql = "select * from message where message_id > ? and not deleted order by deleted, message_id "
+        + "fetch first ? rows only";
+    streamInChunks(last -> STREAM_ALL_MESSAGES.time(() -> Sql.list(sql, RowMappers.MESSAGE,
+        last == null ? 0 : last.getMessage_id(), FETCH_SIZE)), callback);
+  }
 
-      while (rs.next()) {
-        int message_id = rs.getInt("message_id");
-        int posted_by = rs.getInt("posted_by");
-        String message_text = rs.getString("message_text");
-        long time_posted_epoch = rs.getLong("time_posted_epoch");
-        Message returnMessage = new Message(message_id, posted_by, message_text, time_posted_epoch);
-        return Optional.of(returnMessage);
-      }
+  public static Optional<Message> getMessageById(int id) {
 
-      // connection.close();
+    try {
+      String sql = "select * from message where message_id = ? and not deleted";
+      return GET_MESSAGE_BY_ID.time(() -> Sql.first(sql, RowMappers.MESSAGE, id));
 
     } catch (SQLException e) {
 
@@ -130,120 +174,274 @@ public class MessageDAO {
 
       return Optional.empty();
     }
-    return Optional.empty();
   }
 
+  /**
+   * Marks the message deleted. It's a single-row update by primary key, and the row is physically removed later by
+   * purgeDeletedMessages().
+   * @return the deleted message, or empty if there is no such message or it was already deleted
+   */
   public static Optional<Message> deleteMessage(int id) {
 
     try {
+      String sql = "select * from final table "
+          + "(update message set deleted = true where message_id = ? and not deleted)";
+      return DELETE_MESSAGE.time(() -> Sql.first(sql, RowMappers.MESSAGE, id));
 
-      Connection connection = ConnectionUtil.getConnection();
+    } catch (SQLException e) {
 
-      String sql = "select * from message where message_id = ?";
-      PreparedStatement statement = connection.prepareStatement(sql);
-      statement.setInt(1, id);
+      e.printStackTrace();
 
-      ResultSet rs = statement.executeQuery();
+      return Optional.empty();
+    }
 
-      while (rs.next()) {
-        int message_id = id;
-        int posted_by = rs.getInt("posted_by");
-        String message_text = rs.getString("message_text");
-        long time_posted_epoch = rs.getLong("time_posted_epoch");
-        Message returnMessage = new Message(message_id, posted_by, message_text, time_posted_epoch);
-        return Optional.of(returnMessage);
-      }
+  }
 
-      // connection.close();
+  /**
+   * Updates the message's text and returns the row as it is after the update, in one statement: H2's data change
+   * delta table (FINAL TABLE) hands back the updated row, so there's no second select to read it back.
+   * @return the updated message, or empty if there is no message with that id (or it has been deleted)
+   */
+  public static Optional<Message> updateMessage(int id, String message) {
+
+    try {
+      String sql = "select * from final table "
+          + "(update message set message_text = ? where message_id = ? and not deleted)";
+      return UPDATE_MESSAGE.time(() -> Sql.first(sql, RowMappers.MESSAGE, message, id));
 
     } catch (SQLException e) {
 
       e.printStackTrace();
 
       return Optional.empty();
+
     }
 
-    return Optional.empty();
+  }
+
+  public static List<Message> getMessagesByUserId(int id) {
+
+    try {
+      String sql = "select * from message where posted_by = ? and not deleted";
+      return GET_MESSAGES_BY_USER_ID.time(() -> Sql.list(sql, RowMappers.MESSAGE, id));
+
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
 
   }
 
-  public static Optional<Message> updateMessage(int id, String message) {
+  /**
+   * Keyset pagination over all messages: up to limit messages with a message_id greater than afterId, in message_id
+   * order. Walks the (deleted, message_id) index from afterId, so deep pages cost the same as the first one and
+   * tombstones are never visited. The order by names both index columns (deleted is always false here, so it changes
+   * nothing): with message_id alone H2 doesn't see that the index is already in order, and reads and sorts every row
+   * after afterId to return the first few.
+   */
+  public static List<Message> getMessagesAfter(int afterId, int limit) {
 
     try {
+      String sql = "select * from message where message_id > ? and not deleted order by deleted, message_id "
+          + "fetch first ? rows only";
+      return GET_MESSAGES_AFTER.time(() -> Sql.list(sql, RowMappers.MESSAGE, afterId, limit));
 
-      Connection connection = ConnectionUtil.getConnection();
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
+  }
 
-      String sql = "update message set message_text = ? where message_id = ?";
-      PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-      statement.setString(1, message);
-      statement.setInt(2, id);
+  /**
+   * Looks up many messages in one query. The ids go in as a single array parameter, so it is the same statement
+   * however many there are, and H2 resolves each one through the primary key index.
+   * Lets SQLExceptions through, like getMessagesByUserIdAfter(), so callers don't cache a failed lookup.
+   * @return the messages that exist, in no particular order
+   */
+  public static List<Message> getMessagesByIds(int[] ids) throws SQLException {
 
-      statement.executeUpdate();
+    if (ids.length == 0) {
+      return new ArrayList<>();
+    }
 
-      // ResultSet rs = statement.getGeneratedKeys();
-      // The above ResultSet didn't work, I guess because getGeneratedKeys() only returned message_id and message_text. So I just added another sql query to get all the parameters after updating:
+    return GET_MESSAGES_BY_IDS.time(() -> selectMessagesByIds(ids));
+  }
+
+  private static List<Message> selectMessagesByIds(int[] ids) throws SQLException {
 
-      String sql2 = "select * from message where message_id = ?";
-      PreparedStatement statement2 = connection.prepareStatement(sql2);
-      statement2.setInt(1, id);
-      ResultSet rs = statement2.executeQuery();
+    try (Connection connection = ConnectionUtil.getConnection()) {
 
-      while (rs.next()) {
-        int message_id = id;
-        int posted_by = rs.getInt("posted_by");
-        String message_text = message;
-        long time_posted_epoch = rs.getLong("time_posted_epoch");
-        Message returnMessage = new Message(message_id, posted_by, message_text, time_posted_epoch);
-        return Optional.of(returnMessage);
+      Integer[] boxedIds = new Integer[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        boxedIds[i] = ids[i];
       }
 
-      // connection.close();
+      String sql = "select * from message where message_id = any(?) and not deleted";
+      return Sql.list(connection, sql, RowMappers.MESSAGE, connection.createArrayOf("INTEGER", boxedIds));
+    }
+  }
 
-    } catch (SQLException e) {
+  /**
+   * Keyset pagination over one account's messages. Uses the (posted_by, message_id) index, ordered by both columns
+   * for the same reason as getMessagesAfter().
+   * Unlike most DAO methods this lets SQLExceptions through, so callers that cache the result can tell "no
+   * messages" apart from "the query failed".
+   */
+  public static List<Message> getMessagesByUserIdAfter(int id, int afterId, int limit) throws SQLException {
+
+    String sql = "select * from message where posted_by = ? and message_id > ? and not deleted "
+        + "order by posted_by, message_id "
+        + "fetch first ? rows only";
+    return GET_MESSAGES_BY_USER_ID_AFTER.time(() -> Sql.list(sql, RowMappers.MESSAGE, id, afterId, limit));
+  }
 
-      e.printStackTrace();
+  /**
+   * The ids of each account's newest messages: up to limit message_ids below beforeId per account, grouped by account
+   * rather than in any overall order. For home timelines, which merge them, and only need ids since they read the
+   * messages back through the message cache.
+   *
+   * Each account is its own seek down the (posted_by, message_id desc) index that stops after limit rows, so the cost
+   * is the page size, not the accounts' history. (A single posted_by = any(?) order by message_id desc query reads
+   * and sorts every message below beforeId of every account.) The seeks are sent UNION_ACCOUNTS at a time as one
+   * union all statement, so following many accounts takes few round trips and only UNION_ACCOUNTS statement shapes
+   * ever reach the statement cache.
+   * Lets SQLExceptions through, like getMessagesByUserIdAfter().
+   */
+  public static List<Integer> getMessageIdsByUserIdsBefore(int[] ids, int beforeId, int limit) throws SQLException {
+
+    List<Integer> messageIds = new ArrayList<>();
+    if (ids.length == 0) {
+      return messageIds;
+    }
 
-      return Optional.empty();
+    try (Connection connection = ConnectionUtil.getConnection()) {
+      for (int start = 0; start < ids.length; start += UNION_ACCOUNTS) {
+        int count = Math.min(UNION_ACCOUNTS, ids.length - start);
+        Object[] params = new Object[count * 3];
+        for (int i = 0; i < count; i++) {
+          params[i * 3] = ids[start + i];
+          params[i * 3 + 1] = beforeId;
+          params[i * 3 + 2] = limit;
+        }
+        String sql = NEWEST_IDS_SQL[count - 1];
+        messageIds.addAll(GET_MESSAGE_IDS_BY_USER_IDS_BEFORE.time(() -> Sql.list(connection, sql,
+            RowMappers.MESSAGE_ID, params)));
+      }
+    }
+    return messageIds;
+  }
 
+  // The statements for getMessageIdsByUserIdsBefore(), by number of accounts - 1
+  private static String[] newestIdsSql() {
+
+    // Each seek is a derived table: H2 2.1 caches a parenthesized union member with a parameter in its fetch first,
+    // and a reused statement would then keep returning the first execution's rows
+    String seek = "select message_id from (select message_id from message where posted_by = ? and message_id < ? "
+        + "and not deleted order by posted_by, message_id desc fetch first ? rows only)";
+    String[] sql = new String[UNION_ACCOUNTS];
+    StringBuilder union = new StringBuilder(seek);
+    for (int i = 0; i < UNION_ACCOUNTS; i++) {
+      if (i > 0) {
+        union.append(" union all ").append(seek);
+      }
+      sql[i] = union.toString();
     }
+    return sql;
+  }
 
-    return Optional.empty();
+  /**
+   * Like getMessagesByUserId(), but streams each row to the callback. See streamAllMessages().
+   */
+  public static void streamMessagesByUserId(int id, RowCallback<Message> callback) throws SQLException, IOException {
 
+    String sql = "select * from message where posted_by = ? and message_id > ? and not deleted "
+        + "order by posted_by, message_id fetch first ? rows only";
+    streamInChunks(last -> STREAM_MESSAGES_BY_USER_ID.time(() -> Sql.list(sql, RowMappers.MESSAGE, id,
+        last == null ? 0 : last.getMessage_id(), FETCH_SIZE)), callback);
   }
-  
-  public static List<Message> getMessagesByUserId(int id) {
 
-    List<Message> messages = new ArrayList<>();
+  /**
+   * Keyset pagination over a time range: up to limit messages with since <= time_posted_epoch < until, in
+   * (time_posted_epoch, message_id) order, starting after the message at (afterTime, afterId). Pass Long.MIN_VALUE
+   * and -1 for the first page.
+   *
+   * Reads the (deleted, time_posted_epoch, message_id) index, or (posted_by, deleted, time_posted_epoch, message_id)
+   * for one account, from the later of since and afterTime, so a page reads about limit index entries however big the
+   * table is or however deep the page. (H2 won't start an index scan at a row value like (time, id) > (?, ?), so the
+   * cursor is split into a range on time plus a filter for the rows that share afterTime.) The order by names every
+   * index column, as in getMessagesAfter().
+   * Lets SQLExceptions through, like getMessagesByUserIdAfter().
+   * @param postedBy only this account's messages, or null for everyone's
+   */
+  public static List<Message> getMessagesInTimeRange(Integer postedBy, long since, long until, long afterTime,
+      int afterId, int limit) throws SQLException {
+    return getMessagesInTimeRange(GET_MESSAGES_IN_TIME_RANGE, postedBy, since, until, afterTime, afterId, limit);
+  }
 
-    try {
+  private static List<Message> getMessagesInTimeRange(Metrics.Operation operation, Integer postedBy, long since,
+      long until, long afterTime, int afterId, int limit) throws SQLException {
 
-      Connection connection = ConnectionUtil.getConnection();
-
-      String sql = "select * from message where posted_by = ?";
-      PreparedStatement statement = connection.prepareStatement(sql);
-      statement.setInt(1, id);
-      // Remember that connection.prepareStatement(sql) is only for prepared
-      // statements. For regular statements it's .createStatement() with no parameters
-      // passed.
-      ResultSet rs = statement.executeQuery();
-
-      while (rs.next()) {
-        int message_id = rs.getInt("message_id");
-        int posted_by = rs.getInt("posted_by");
-        String message_text = rs.getString("message_text");
-        long time_posted_epoch = rs.getLong("time_posted_epoch");
-        Message nextMessage = new Message(message_id, posted_by, message_text, time_posted_epoch);
-        messages.add(nextMessage);
-      }
+    long from = Math.max(since, afterTime);
+    if (postedBy == null) {
+      String sql = "select * from message where not deleted and time_posted_epoch >= ? and time_posted_epoch < ? "
+          + "and (time_posted_epoch > ? or message_id > ?) order by deleted, time_posted_epoch, message_id "
+          + "fetch first ? rows only";
+      return operation.time(() -> Sql.list(sql, RowMappers.MESSAGE, from, until, afterTime, afterId, limit));
+    }
 
-      // connection.close();
+    String sql = "select * from message where posted_by = ? and not deleted and time_posted_epoch >= ? "
+        + "and time_posted_epoch < ? and (time_posted_epoch > ? or message_id > ?) "
+        + "order by posted_by, deleted, time_posted_epoch, message_id fetch first ? rows only";
+    return operation.time(() -> Sql.list(sql, RowMappers.MESSAGE, postedBy, from, until, afterTime, afterId,
+        limit));
+  }
 
-    } catch (SQLException e) {
-      e.printStackTrace();
-    } 
-    
-    return messages;
+  /**
+   * Every message with since <= time_posted_epoch < until, in (time_posted_epoch, message_id) order, streamed to the
+   * callback a page of getMessagesInTimeRange() at a time. See streamAllMessages().
+   * @param postedBy only this account's messages, or null for everyone's
+   */
+  public static void streamMessagesInTimeRange(Integer postedBy, long since, long until,
+      RowCallback<Message> callback) throws SQLException, IOException {
+
+    streamInChunks(last -> getMessagesInTimeRange(STREAM_MESSAGES_IN_TIME_RANGE, postedBy, since, until,
+        last == null ? Long.MIN_VALUE : last.getTime_posted_epoch(), last == null ? -1 : last.getMessage_id(),
+        FETCH_SIZE), callback);
+  }
+
+  /**
+   * Physically removes up to limit tombstoned messages, oldest first, in one statement. The (deleted, message_id)
+   * index takes it straight to them.
+   * Lets SQLExceptions through, so the caller can tell a failed purge from one that found nothing to do.
+   * @return how many rows were removed
+   */
+  public static int purgeDeletedMessages(int limit) throws SQLException {
+
+    String sql = "delete from message where deleted = true fetch first ? rows only";
+    return PURGE_DELETED_MESSAGES.time(() -> Sql.update(sql, limit));
+  }
 
+  // Reads the next chunk of a keyset query: the rows after last, or the first ones if last is null
+  private interface ChunkQuery {
+    List<Message> next(Message last) throws SQLException;
   }
-  
+
+  // Runs a keyset query FETCH_SIZE rows at a time until a chunk comes back short. Each chunk's connection goes back to
+  // the pool before its rows are handed over, so a callback that blocks (writing to a slow client, say) never keeps a
+  // connection from anyone else.
+  private static void streamInChunks(ChunkQuery query, RowCallback<Message> callback) throws SQLException, IOException {
+
+    Message last = null;
+    List<Message> chunk;
+    do {
+      chunk = query.next(last);
+      for (Message message : chunk) {
+        callback.accept(message);
+      }
+      if (!chunk.isEmpty()) {
+        last = chunk.get(chunk.size() - 1);
+      }
+    } while (chunk.size() == FETCH_SIZE);
+  }
+
 }
@@ -0,0 +1,15 @@
+package DAO;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from the streaming DAO methods. They read a chunk of rows, give the connection back to
+ * the pool, and only then hand those rows over, so no connection or ResultSet is held while this runs. Callers can do
+ * slow work here, such as writing each row to an HTTP response, without tying up the pool, and never hold more than
+ * one chunk in memory.
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+
+  void accept(T row) throws IOException;
+}
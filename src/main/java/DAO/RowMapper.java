@@ -0,0 +1,12 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the ResultSet's current row into an object. Must not move the cursor.
+ */
+@FunctionalInterface
+interface RowMapper<T> {
+  T map(ResultSet rs) throws SQLException;
+}
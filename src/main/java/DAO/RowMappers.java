@@ -0,0 +1,26 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * The one place rows of each table are turned into model objects.
+ */
+class RowMappers {
+
+  static final RowMapper<Message> MESSAGE = rs -> new Message(
+      rs.getInt("message_id"),
+      rs.getInt("posted_by"),
+      rs.getString("message_text"),
+      rs.getLong("time_posted_epoch"));
+
+  static final RowMapper<Account> ACCOUNT = rs -> new Account(
+      rs.getInt("account_id"),
+      rs.getString("username"),
+      rs.getString("password"));
+
+  static final RowMapper<Integer> MESSAGE_ID = rs -> rs.getInt("message_id");
+
+  // Generated keys come back as a one-column result set
+  static final RowMapper<Integer> GENERATED_ID = rs -> rs.getInt(1);
+}
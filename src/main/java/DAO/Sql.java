@@ -0,0 +1,145 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import Util.ConnectionUtil;
+
+/**
+ * The small execution layer the DAOs run their SQL through.
+ *
+ * Every statement and result set is closed in a try-with-resources block before the method returns, so nothing is
+ * left open whatever happens. Statements are prepared with connection.prepareStatement(), which the ConnectionPool
+ * answers from its per-connection statement cache, so the same SQL isn't parsed again on every call.
+ *
+ * Parameters are bound in order: Integer, Long and String with their own setters, anything else with setObject().
+ * Each method either borrows a connection for just that statement or runs on one the caller passes in, for work that
+ * has to share a transaction or session settings.
+ */
+class Sql {
+
+  /**
+   * @return every row the query returns, mapped
+   */
+  static <T> List<T> list(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+    try (Connection connection = ConnectionUtil.getConnection()) {
+      return list(connection, sql, mapper, params);
+    }
+  }
+
+  static <T> List<T> list(Connection connection, String sql, RowMapper<T> mapper, Object... params)
+      throws SQLException {
+
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      bind(statement, params);
+      try (ResultSet rs = statement.executeQuery()) {
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+          rows.add(mapper.map(rs));
+        }
+        return rows;
+      }
+    }
+  }
+
+  /**
+   * @return the first row the query returns, mapped, or empty if there are none
+   */
+  static <T> Optional<T> first(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+    try (Connection connection = ConnectionUtil.getConnection()) {
+      return first(connection, sql, mapper, params);
+    }
+  }
+
+  static <T> Optional<T> first(Connection connection, String sql, RowMapper<T> mapper, Object... params)
+      throws SQLException {
+
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      bind(statement, params);
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next() ? Optional.of(mapper.map(rs)) : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * @return the number of rows changed
+   */
+  static int update(String sql, Object... params) throws SQLException {
+    try (Connection connection = ConnectionUtil.getConnection()) {
+      return update(connection, sql, params);
+    }
+  }
+
+  static int update(Connection connection, String sql, Object... params) throws SQLException {
+
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      bind(statement, params);
+      return statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Runs an insert into a table with a generated int key.
+   * @return the generated key, or empty if no row was inserted
+   */
+  static Optional<Integer> insert(String sql, Object... params) throws SQLException {
+
+    try (Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      bind(statement, params);
+      statement.executeUpdate();
+      try (ResultSet rs = statement.getGeneratedKeys()) {
+        return rs.next() ? Optional.of(RowMappers.GENERATED_ID.map(rs)) : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * Runs one insert per parameter list as a single JDBC batch.
+   * @return the generated keys, one per row, in order
+   */
+  static List<Integer> insertBatch(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+
+    try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      for (Object[] params : rows) {
+        bind(statement, params);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+
+      List<Integer> ids = new ArrayList<>(rows.size());
+      try (ResultSet rs = statement.getGeneratedKeys()) {
+        while (rs.next()) {
+          ids.add(RowMappers.GENERATED_ID.map(rs));
+        }
+      }
+      if (ids.size() != rows.size()) {
+        throw new SQLException("Expected " + rows.size() + " generated keys, got " + ids.size());
+      }
+      return ids;
+    }
+  }
+
+  private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+
+    for (int i = 0; i < params.length; i++) {
+      Object param = params[i];
+      if (param instanceof Integer) {
+        statement.setInt(i + 1, (Integer) param);
+      } else if (param instanceof Long) {
+        statement.setLong(i + 1, (Long) param);
+      } else if (param instanceof String) {
+        statement.setString(i + 1, (String) param);
+      } else {
+        statement.setObject(i + 1, param);
+      }
+    }
+  }
+}
@@ -2,17 +2,53 @@
 
 package Service;
 
+import java.sql.SQLException;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.ConnectionUtil;
+import Util.IntBitSet;
 
 // Called from SocialMediaController
+//
+// Every account is also kept in memory, by id and by username, so posting, registering and logging in don't have to
+// ask the database whether an account exists. Both are loaded when the app starts (and again after the tables are
+// reset) and kept current by addAccount(). Accounts are never deleted, so they only grow. Until they are loaded,
+// everything falls through to the database as before.
 public class AccountService {
-  
+
+  /**
+   * Every account_id there is, so messages from accounts that don't exist can be turned away without an insert that
+   * the foreign key rejects.
+   */
+  private static final IntBitSet accountIds = new IntBitSet();
+
+  /**
+   * Every account by username, for registration and login. Cached Account objects are shared between requests, so
+   * callers must not modify them.
+   */
+  private static final ConcurrentHashMap<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+
+  // Claims a username in accountsByUsername while its registration is being written, so a second registration for the
+  // same name fails straight away instead of racing the first to the unique constraint.
+  private static final Account REGISTERING = new Account();
+
+  private static volatile boolean accountsLoaded = false;
+
+  static {
+    ConnectionUtil.addResetListener(AccountService::forgetAccounts);
+  }
+
   public static Optional<Account> addAccount(Account account) {
 
-    if (account.getUsername() == null || account.getUsername().trim().isEmpty()) {
+    String username = account.getUsername();
+    if (!accountsLoaded) {
+      loadAccounts();
+    }
+
+    if (username == null || username.trim().isEmpty()) {
       // return empty Optional if username empty
       return Optional.empty();
 
@@ -20,14 +56,91 @@ public class AccountService {
       // return empty Optional if password less than 4 characters long
       return Optional.empty();
 
+    } else if (accountsByUsername.putIfAbsent(username, REGISTERING) != null) {
+      // return empty Optional if the username is taken, or someone else is registering it right now
+      return Optional.empty();
+
     } else {
-      return AccountDAO.addAccount(account);
+      Optional<Account> newAccount = Optional.empty();
+      try {
+        // The unique constraint still has the final say, for names we haven't loaded yet
+        newAccount = AccountDAO.addAccount(account);
+        // Before the caller learns the new id, so its first message is never turned away
+        newAccount.ifPresent(added -> accountIds.add(added.getAccount_id()));
+
+      } finally {
+        // Release the claim either way. Only our own: a reset may have cleared it and someone else claimed the name.
+        if (newAccount.isPresent()) {
+          accountsByUsername.replace(username, REGISTERING, newAccount.get());
+        } else {
+          accountsByUsername.remove(username, REGISTERING);
+        }
+      }
+
+      return newAccount;
     }
   }
 
   public static Optional<Account> login(Account account) {
 
-    // I'm passing the argument directly to the DAO this time, without performing any business logic, because the DAO is the easiest place to check if the usernmae and password match an existing account.
-    return AccountDAO.login(account);
+    if (account.getUsername() == null || account.getPassword() == null) {
+      return Optional.empty();
+    }
+
+    if (!accountsLoaded && !loadAccounts()) {
+      // Only until the accounts are loaded: ask the database directly
+      return AccountDAO.login(account);
+    }
+
+    Account found = accountsByUsername.get(account.getUsername());
+    if (found == null || found == REGISTERING || !account.getPassword().equals(found.getPassword())) {
+      return Optional.empty();
+    }
+    return Optional.of(found);
+  }
+
+  /**
+   * @return false if there is certainly no account with this id. True if there is one, or if the accounts couldn't be
+   *         loaded, in which case the database has the final say.
+   */
+  public static boolean accountExists(int id) {
+
+    if (!accountsLoaded && !loadAccounts()) {
+      return true;
+    }
+    return accountIds.contains(id);
+  }
+
+  /**
+   * Reads every account into memory, unless that has been done already since the last reset.
+   * @return whether the accounts are loaded
+   */
+  public static synchronized boolean loadAccounts() {
+
+    if (accountsLoaded) {
+      return true;
+    }
+    try {
+      for (Account account : AccountDAO.getAllAccounts()) {
+        accountIds.add(account.getAccount_id());
+        if (account.getUsername() != null) {
+          // put, not putIfAbsent: if this name is being registered right now, this row is either that registration's
+          // own or the one it is about to collide with
+          accountsByUsername.put(account.getUsername(), account);
+        }
+      }
+      accountsLoaded = true;
+      return true;
+
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  private static synchronized void forgetAccounts() {
+    accountsLoaded = false;
+    accountIds.clear();
+    accountsByUsername.clear();
   }
 }
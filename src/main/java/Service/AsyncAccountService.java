@@ -0,0 +1,19 @@
+package Service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import Model.Account;
+import Util.ConnectionUtil;
+
+// The AccountService operations run on the shared JdbcExecutor. See AsyncMessageService.
+public class AsyncAccountService {
+
+  public static CompletableFuture<Optional<Account>> addAccount(Account account) {
+    return ConnectionUtil.getExecutor().supply(() -> AccountService.addAccount(account));
+  }
+
+  public static CompletableFuture<Optional<Account>> login(Account account) {
+    return ConnectionUtil.getExecutor().supply(() -> AccountService.login(account));
+  }
+}
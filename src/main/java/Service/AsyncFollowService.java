@@ -0,0 +1,24 @@
+package Service;
+
+import java.util.concurrent.CompletableFuture;
+
+import Util.ConnectionUtil;
+
+// The FollowService operations run on the shared JdbcExecutor. See AsyncMessageService.
+public class AsyncFollowService {
+
+  public static CompletableFuture<Boolean> follow(int followerId, int followeeId) {
+    return ConnectionUtil.getExecutor().supply(() -> FollowService.follow(followerId, followeeId));
+  }
+
+  public static CompletableFuture<Boolean> unfollow(int followerId, int followeeId) {
+    return ConnectionUtil.getExecutor().supply(() -> FollowService.unfollow(followerId, followeeId));
+  }
+
+  /**
+   * See FollowService.getHomePage(). A bad cursor or limit fails the future with an IllegalArgumentException.
+   */
+  public static CompletableFuture<MessagePage> getHomePage(int accountId, String after, int limit) {
+    return ConnectionUtil.getExecutor().supply(() -> FollowService.getHomePage(accountId, after, limit));
+  }
+}
@@ -0,0 +1,98 @@
+package Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * The MessageService operations as CompletableFutures, for callers that shouldn't block while the database works.
+ *
+ * The blocking MessageService methods run on the shared JdbcExecutor (see ConnectionUtil.getExecutor()), so
+ * validation, caching and timeline upkeep are exactly the same as the synchronous path. Reads that can be answered
+ * from memory complete straight away without a trip through the executor.
+ *
+ * A future fails with a RejectedExecutionException when the executor's queue is full.
+ */
+public class AsyncMessageService {
+
+  public static CompletableFuture<Optional<Message>> newMessage(Message message) {
+
+    if (MessageService.BATCH_WRITES) {
+      // The batcher has its own writer thread, so there's no need to tie up an executor thread waiting on it.
+      return MessageService.submitMessage(message);
+    }
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.newMessage(message));
+  }
+
+  public static CompletableFuture<List<Message>> getAllMessages() {
+    return ConnectionUtil.getExecutor().supply(MessageService::getAllMessages);
+  }
+
+  public static CompletableFuture<Optional<Message>> getMessageById(int id) {
+
+    // Peeked so a miss is only counted once, by getMessageById() on the executor
+    if (MessageService.getMessageCache().peek(id) != null) {
+      return CompletableFuture.completedFuture(MessageService.getMessageById(id));
+    }
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessageById(id));
+  }
+
+  public static CompletableFuture<List<Message>> getMessagesByIds(int[] ids) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagesByIds(ids));
+  }
+
+  public static CompletableFuture<Optional<Message>> deleteMessage(int id) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.deleteMessage(id));
+  }
+
+  public static CompletableFuture<Optional<Message>> updateMessage(int id, String updatedMessage) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.updateMessage(id, updatedMessage));
+  }
+
+  public static CompletableFuture<List<Message>> getMessagesByUserId(int id) {
+
+    // getIfCached() doesn't count a miss, so it is only counted once, by getMessagesByUserId() on the executor
+    List<Message> timeline = MessageService.getTimelines().getIfCached(id);
+    if (timeline != null) {
+      return CompletableFuture.completedFuture(timeline);
+    }
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagesByUserId(id));
+  }
+
+  /**
+   * See MessageService.getMessagePage(). A bad cursor or limit fails the future with an IllegalArgumentException.
+   */
+  public static CompletableFuture<MessagePage> getMessagePage(String after, int limit) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagePage(after, limit));
+  }
+
+  public static CompletableFuture<MessagePage> getMessagePageByUserId(int id, String after, int limit) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagePageByUserId(id, after, limit));
+  }
+
+  /**
+   * See MessageService.getMessagePageInTimeRange(). A bad cursor, limit or range fails the future with an
+   * IllegalArgumentException.
+   */
+  public static CompletableFuture<MessagePage> getMessagePageInTimeRange(Integer postedBy, long since, long until,
+      String after, int limit) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagePageInTimeRange(postedBy, since, until,
+        after, limit));
+  }
+
+  public static CompletableFuture<List<Message>> getMessagesInTimeRange(Integer postedBy, long since, long until) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.getMessagesInTimeRange(postedBy, since, until));
+  }
+
+  /**
+   * See MessageService.searchMessages(). A bad cursor, limit or query fails the future with an
+   * IllegalArgumentException.
+   */
+  public static CompletableFuture<MessagePage> searchMessages(String query, String after, int limit) {
+    return ConnectionUtil.getExecutor().supply(() -> MessageService.searchMessages(query, after, limit));
+  }
+
+}
@@ -0,0 +1,240 @@
+package Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.JsonUtil;
+import Util.ModelCodec;
+import Util.ModelJsonMapper;
+
+/**
+ * The whole GET /messages response, already encoded as JSON and as gzip, so the hottest read is a byte array copy
+ * instead of a full table scan and a JSON encode.
+ *
+ * Each body is labelled with the MessageVersions epoch and all-messages version it was read at, and get() only hands
+ * it out while those are still current, so it is never staler than a read from the database would be. MessageService
+ * calls rebuild() after every write, and a single background thread reads the table and encodes it again. Requests
+ * that come in before it has caught up get null and read the database themselves, exactly as they would without the
+ * cache. Rebuilds coalesce: however many writes come in while one runs, one more follows it, pauseMillis later, so
+ * under a steady stream of writes the encoder takes a bounded share of a CPU. And a write only starts one if the body
+ * it replaces has been asked for, so nothing is re-encoded over and over while nobody is reading it.
+ *
+ * Tables with more than maxMessages messages aren't cached, since each rebuild would read and hold all of them; that
+ * is checked again no more than once a minute.
+ */
+public class EncodedMessagesCache {
+
+  private static final Logger log = LoggerFactory.getLogger(EncodedMessagesCache.class);
+
+  private static final long TOO_LARGE_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  /**
+   * One encoded response body, and the versions it was read at.
+   */
+  public static class Body {
+
+    private final long epoch;
+    private final long version;
+    private final int messageCount;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    private Body(long epoch, long version, int messageCount, byte[] json, byte[] gzip) {
+      this.epoch = epoch;
+      this.version = version;
+      this.messageCount = messageCount;
+      this.json = json;
+      this.gzip = gzip;
+    }
+
+    public int getMessageCount() {
+      return messageCount;
+    }
+
+    /**
+     * @return the JSON array of every message. Shared, so callers must not modify it.
+     */
+    public byte[] getJson() {
+      return json;
+    }
+
+    /**
+     * @return getJson(), gzipped. Shared, so callers must not modify it.
+     */
+    public byte[] getGzip() {
+      return gzip;
+    }
+  }
+
+  // Thrown out of the row callback to stop reading a table that is too large
+  private static class TooLargeException extends IOException {
+  }
+
+  private final MessageVersions versions;
+  private final int maxMessages;
+  private final long pauseMillis;
+
+  private volatile Body current;
+  // Whether get() has been called since the last rebuild started
+  private volatile boolean wanted;
+  // When the table was last found to be too large, or 0
+  private volatile long tooLargeAt;
+  private final Semaphore rebuildRequested = new Semaphore(0);
+
+  // ~~ METRICS ~~
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder rebuildCount = new LongAdder();
+
+  /**
+   * @param maxMessages the most messages to cache
+   * @param pauseMillis how long to wait after a rebuild before starting another
+   */
+  public EncodedMessagesCache(MessageVersions versions, int maxMessages, long pauseMillis) {
+
+    if (maxMessages < 0 || pauseMillis < 0) {
+      throw new IllegalArgumentException("maxMessages and pauseMillis must not be negative, were " + maxMessages + ", "
+          + pauseMillis);
+    }
+
+    this.versions = versions;
+    this.maxMessages = maxMessages;
+    this.pauseMillis = pauseMillis;
+
+    // A new table hasn't been asked for yet
+    ConnectionUtil.addResetListener(() -> {
+      wanted = false;
+      current = null;
+    });
+
+    Thread encoder = new Thread(this::rebuildLoop, "messages-encoder");
+    encoder.setDaemon(true);
+    encoder.start();
+  }
+
+  /**
+   * @return the encoded response if it is up to date with every write so far, or null. A miss starts a rebuild.
+   */
+  public Body get() {
+
+    wanted = true;
+    Body body = current;
+    if (body != null && isCurrent(body)) {
+      hitCount.increment();
+      return body;
+    }
+    missCount.increment();
+    rebuild();
+    return null;
+  }
+
+  /**
+   * Asks for the response to be encoded again, once the background thread gets to it, if it has been asked for since it
+   * was last encoded. Call after every write.
+   */
+  public void rebuild() {
+    if (wanted && rebuildRequested.availablePermits() == 0) {
+      rebuildRequested.release();
+    }
+  }
+
+  private boolean isCurrent(Body body) {
+    return body.epoch == versions.getEpoch() && body.version == versions.getAllVersion();
+  }
+
+  private void rebuildLoop() {
+
+    while (true) {
+      try {
+        rebuildRequested.acquire();
+        rebuildRequested.drainPermits();
+
+        long tooLarge = tooLargeAt;
+        if (tooLarge != 0 && System.nanoTime() - tooLarge < TOO_LARGE_RETRY_NANOS) {
+          continue;
+        }
+
+        Body body = current;
+        if (body == null || !isCurrent(body)) {
+          wanted = false;
+          current = null;
+          current = encode();
+          rebuildCount.increment();
+          Thread.sleep(pauseMillis);
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException | IOException | SQLException e) {
+        log.error("Encoding GET /messages failed", e);
+      }
+    }
+  }
+
+  // Reads every message at the current version. Returns null if there are more than maxMessages.
+  private Body encode() throws IOException, SQLException {
+
+    // Taken before the read, so the body is never labelled newer than what it holds
+    long epoch = versions.getEpoch();
+    long version = versions.getAllVersion();
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream(8192);
+    int[] count = new int[1];
+    try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(json)) {
+      generator.writeStartArray();
+      MessageDAO.streamAllMessages(message -> {
+        if (++count[0] > maxMessages) {
+          throw new TooLargeException();
+        }
+        if (ModelJsonMapper.USE_CODEC) {
+          ModelCodec.writeMessage(generator, message);
+        } else {
+          JsonUtil.MESSAGE_WRITER.writeValue(generator, message);
+        }
+      });
+      generator.writeEndArray();
+    } catch (TooLargeException e) {
+      tooLargeAt = System.nanoTime() | 1;
+      return null;
+    }
+    tooLargeAt = 0;
+
+    byte[] jsonBytes = json.toByteArray();
+    ByteArrayOutputStream gzip = new ByteArrayOutputStream(jsonBytes.length / 4 + 64);
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(gzip)) {
+      gzipStream.write(jsonBytes);
+    }
+    return new Body(epoch, version, count[0], jsonBytes, gzip.toByteArray());
+  }
+
+  /**
+   * @return the size of the cached response, identity and gzip together, or 0 if there is none
+   */
+  public long getByteCount() {
+    Body body = current;
+    return body == null ? 0 : body.json.length + body.gzip.length;
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  public long getRebuildCount() {
+    return rebuildCount.sum();
+  }
+}
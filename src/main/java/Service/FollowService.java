@@ -0,0 +1,323 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.BoundedIntList;
+import Util.ConnectionUtil;
+import Util.IntLruCache;
+import Util.PageCursor;
+
+// Called from SocialMediaController
+//
+// Who follows whom, and each account's home timeline: the messages of the accounts it follows, newest first.
+//
+// Home timelines are fanned out on write. When a message is posted, MessageService hands it to onInsert(), which adds
+// its id to the cached home timeline of every follower of its author. Reading a page of a home timeline is then a
+// binary search and a copy of limit ids out of memory, plus one MessageService.getMessagesByIds() for the messages
+// themselves, however many accounts are followed. Each timeline keeps only the newest HOME_TIMELINE_SIZE ids; pages
+// older than that are read from the database.
+//
+// An account with more than FAN_OUT_MAX_FOLLOWERS followers would make each of its posts cost that many timeline
+// updates, so its messages are not fanned out. They are fanned out on read instead: a page of a follower's timeline is
+// merged with the newest limit + 1 ids of each such account it follows, off the (posted_by, message_id desc) index.
+//
+// The follow graph itself is kept in memory, like AccountService's accounts: loaded when the app starts (and again
+// after the tables are reset) and kept current by follow() and unfollow().
+public class FollowService {
+
+  /**
+   * Accounts with more followers than this have their messages read into their followers' home timelines when they
+   * are read, instead of being added to each one when they are posted.
+   */
+  public static final int FAN_OUT_MAX_FOLLOWERS = Integer.getInteger("socialmedia.home.fanOutMaxFollowers", 1_000);
+
+  private static final int HOME_TIMELINE_SIZE = Integer.getInteger("socialmedia.home.maxMessagesPerAccount", 800);
+
+  // Followers by followee, and followees by follower
+  private static final ConcurrentHashMap<Integer, Set<Integer>> followers = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Integer, Set<Integer>> followees = new ConcurrentHashMap<>();
+
+  /**
+   * Home timelines as message ids. Loaded on first read, then kept current by onInsert() and onDelete(). Follows and
+   * unfollows drop the follower's timeline, to be loaded again with or without the other account's messages.
+   */
+  private static final IntLruCache<BoundedIntList> homeTimelines = new IntLruCache<>(
+      Integer.getInteger("socialmedia.home.maxAccounts", 10_000), 0);
+
+  private static volatile boolean followsLoaded = false;
+
+  static {
+    ConnectionUtil.addResetListener(FollowService::forgetFollows);
+    MessageService.registerMetrics("home_timelines", homeTimelines);
+  }
+
+  /**
+   * @return false if the accounts are the same or either one doesn't exist
+   */
+  public static boolean follow(int followerId, int followeeId) {
+
+    if (!isValidFollow(followerId, followeeId) || !FollowDAO.follow(followerId, followeeId)) {
+      return false;
+    }
+
+    addFollow(followerId, followeeId);
+    // Reload with the new account's messages
+    homeTimelines.remove(followerId);
+    return true;
+  }
+
+  /**
+   * Unfollowing an account that isn't followed succeeds.
+   * @return false if the accounts are the same or either one doesn't exist
+   */
+  public static boolean unfollow(int followerId, int followeeId) {
+
+    if (!isValidFollow(followerId, followeeId) || !FollowDAO.unfollow(followerId, followeeId)) {
+      return false;
+    }
+
+    removeFollow(followerId, followeeId);
+    // Reload without the old account's messages
+    homeTimelines.remove(followerId);
+    return true;
+  }
+
+  private static boolean isValidFollow(int followerId, int followeeId) {
+    return followerId != followeeId && AccountService.accountExists(followerId)
+        && AccountService.accountExists(followeeId);
+  }
+
+  /**
+   * Adds a new message to its author's followers' home timelines, unless the author has too many followers.
+   */
+  static void onInsert(Message message) {
+
+    Set<Integer> accountFollowers = followers.get(message.getPosted_by());
+    if (accountFollowers == null || accountFollowers.size() > FAN_OUT_MAX_FOLLOWERS) {
+      return;
+    }
+
+    int id = message.getMessage_id();
+    for (int follower : accountFollowers) {
+      homeTimelines.computeIfPresent(follower, timeline -> {
+        timeline.add(id);
+        return timeline;
+      });
+    }
+  }
+
+  /**
+   * Takes a deleted message back out of the home timelines onInsert() put it in, so pages stay full. (Reads skip
+   * deleted messages either way.)
+   */
+  static void onDelete(Message message) {
+
+    Set<Integer> accountFollowers = followers.get(message.getPosted_by());
+    if (accountFollowers == null || accountFollowers.size() > FAN_OUT_MAX_FOLLOWERS) {
+      return;
+    }
+
+    int id = message.getMessage_id();
+    for (int follower : accountFollowers) {
+      homeTimelines.computeIfPresent(follower, timeline -> {
+        timeline.remove(id);
+        return timeline;
+      });
+    }
+  }
+
+  /**
+   * One page of an account's home timeline: messages from the accounts it follows, newest (highest message_id) first.
+   * A page can be short if some of its messages were deleted while it was read.
+   * @param after the cursor from the previous page, or null for the first page
+   * @param limit page size, between 1 and MessageService.MAX_PAGE_SIZE
+   * @throws IllegalArgumentException if the cursor or limit is invalid
+   */
+  public static MessagePage getHomePage(int accountId, String after, int limit) {
+
+    int beforeId = decodeCursor(after);
+    MessageService.checkLimit(limit);
+
+    if (!followsLoaded && !loadFollows()) {
+      return new MessagePage(new ArrayList<>(), null);
+    }
+    Set<Integer> following = followees.getOrDefault(accountId, Collections.emptySet());
+
+    // One extra id tells us whether there is another page
+    int[] ids;
+    try {
+      BoundedIntList timeline = getHomeTimeline(accountId, following);
+      ids = timeline.before(beforeId, limit + 1);
+
+      if (ids.length <= limit && timeline.isTruncated()) {
+        // Past the oldest message the timeline kept, so read this page from every account followed
+        ids = newestIds(following, beforeId, limit + 1);
+      } else {
+        int[] unfannedIds = newestIds(fanOutOnRead(following), beforeId, limit + 1);
+        ids = newest(concat(ids, unfannedIds), limit + 1);
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new MessagePage(new ArrayList<>(), null);
+    }
+
+    List<Message> messages = MessageService.getMessagesByIds(Arrays.copyOf(ids, Math.min(ids.length, limit)));
+    String nextCursor = ids.length > limit ? PageCursor.encode(ids[limit - 1]) : null;
+    return new MessagePage(messages, nextCursor);
+  }
+
+  private static BoundedIntList getHomeTimeline(int accountId, Set<Integer> following) throws SQLException {
+
+    BoundedIntList timeline = homeTimelines.get(accountId);
+    if (timeline != null) {
+      return timeline;
+    }
+
+    // Whatever onInsert() would have added, had the timeline always been cached. Reading one id more than fits tells
+    // us whether older ones are missing.
+    long stamp = homeTimelines.stamp(accountId);
+    List<Integer> fannedOut = new ArrayList<>(following);
+    fannedOut.removeAll(fanOutOnRead(following));
+    int[] ids = newestIds(fannedOut, Integer.MAX_VALUE, HOME_TIMELINE_SIZE + 1);
+
+    int[] ascending = new int[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      ascending[i] = ids[ids.length - 1 - i];
+    }
+    timeline = new BoundedIntList(HOME_TIMELINE_SIZE, ascending, false);
+
+    homeTimelines.putIfUnchanged(accountId, timeline, stamp);
+    return timeline;
+  }
+
+  // The accounts among these whose messages aren't fanned out on write
+  private static List<Integer> fanOutOnRead(Set<Integer> accounts) {
+
+    List<Integer> fanOutOnRead = new ArrayList<>();
+    for (int account : accounts) {
+      Set<Integer> accountFollowers = followers.get(account);
+      if (accountFollowers != null && accountFollowers.size() > FAN_OUT_MAX_FOLLOWERS) {
+        fanOutOnRead.add(account);
+      }
+    }
+    return fanOutOnRead;
+  }
+
+  // The newest count message ids below beforeId posted by any of the accounts, newest first: an index seek of at most
+  // count rows per account, merged
+  private static int[] newestIds(Collection<Integer> accounts, int beforeId, int count) throws SQLException {
+
+    int[] accountIds = new int[accounts.size()];
+    int i = 0;
+    for (int account : accounts) {
+      accountIds[i++] = account;
+    }
+
+    List<Integer> ids = MessageDAO.getMessageIdsByUserIdsBefore(accountIds, beforeId, count);
+    int[] all = new int[ids.size()];
+    for (i = 0; i < all.length; i++) {
+      all[i] = ids.get(i);
+    }
+    return newest(all, count);
+  }
+
+  // The count largest distinct ids, largest first
+  private static int[] newest(int[] ids, int count) {
+
+    Arrays.sort(ids);
+    int[] newest = new int[Math.min(ids.length, count)];
+    int size = 0;
+    for (int i = ids.length - 1; i >= 0 && size < newest.length; i--) {
+      if (size == 0 || ids[i] != newest[size - 1]) {
+        newest[size++] = ids[i];
+      }
+    }
+    return Arrays.copyOf(newest, size);
+  }
+
+  private static int[] concat(int[] first, int[] second) {
+
+    int[] both = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, both, first.length, second.length);
+    return both;
+  }
+
+  private static int decodeCursor(String after) {
+
+    if (after == null || after.isEmpty()) {
+      return Integer.MAX_VALUE;
+    }
+    long beforeId = PageCursor.decode(after, 1)[0];
+    if (beforeId < 0 || beforeId > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Malformed cursor: " + after);
+    }
+    return (int) beforeId;
+  }
+
+  /**
+   * Reads every follow into memory, unless that has been done already since the last reset.
+   * @return whether the follows are loaded
+   */
+  public static synchronized boolean loadFollows() {
+
+    if (followsLoaded) {
+      return true;
+    }
+    try {
+      for (int[] follow : FollowDAO.getAllFollows()) {
+        followers.computeIfAbsent(follow[1], id -> ConcurrentHashMap.newKeySet()).add(follow[0]);
+        followees.computeIfAbsent(follow[0], id -> ConcurrentHashMap.newKeySet()).add(follow[1]);
+      }
+      followsLoaded = true;
+      return true;
+
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  // Called once the follow is in the database. If the follows aren't loaded yet, loading them will pick it up.
+  private static synchronized void addFollow(int followerId, int followeeId) {
+
+    if (followsLoaded) {
+      followers.computeIfAbsent(followeeId, id -> ConcurrentHashMap.newKeySet()).add(followerId);
+      followees.computeIfAbsent(followerId, id -> ConcurrentHashMap.newKeySet()).add(followeeId);
+    }
+  }
+
+  private static synchronized void removeFollow(int followerId, int followeeId) {
+
+    if (!followsLoaded) {
+      return;
+    }
+    Set<Integer> accountFollowers = followers.getOrDefault(followeeId, Collections.emptySet());
+    boolean wasFanOutOnRead = accountFollowers.size() > FAN_OUT_MAX_FOLLOWERS;
+    accountFollowers.remove(followerId);
+    followees.getOrDefault(followerId, Collections.emptySet()).remove(followeeId);
+
+    if (wasFanOutOnRead && accountFollowers.size() <= FAN_OUT_MAX_FOLLOWERS) {
+      // Its messages go back to being fanned out on write, but the ones it posted in the meantime never were
+      for (int follower : accountFollowers) {
+        homeTimelines.remove(follower);
+      }
+    }
+  }
+
+  private static synchronized void forgetFollows() {
+    followsLoaded = false;
+    followers.clear();
+    followees.clear();
+    homeTimelines.clear();
+  }
+}
@@ -0,0 +1,435 @@
+package Service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import Model.Message;
+import Util.JsonUtil;
+import Util.ModelCodec;
+import Util.ModelJsonMapper;
+
+/**
+ * Pushes message changes to live subscribers, so clients can stop polling GET /messages.
+ *
+ * MessageService publishes every message it creates, updates or deletes once the change is committed. publish() only
+ * queues the event, so the write batcher and request threads never wait on subscribers. A single dispatcher thread
+ * turns each event into JSON once, e.g. {"event":"created","message":{...}}, and hands that same String to every
+ * subscriber that wants it: everyone subscribed to all messages, plus whoever subscribed to the author's alone.
+ *
+ * A bulk insert is published as one event, however many rows it has, and sent as {"event":"created","messages":[...]}
+ * with up to FRAME_MESSAGES messages a time (each account's subscribers get only that account's). So a bulk load
+ * neither fills the dispatcher's queue nor each subscriber's buffer with one send per row.
+ *
+ * Subscribers are Sinks with asynchronous sends, such as WebSocket sessions, so the dispatcher never blocks on a
+ * client and no subscriber needs a thread of its own. Each subscription counts the sends that haven't completed yet.
+ * That count is its buffer: a subscriber that lets more than maxPending pile up isn't reading fast enough, and is
+ * closed rather than left to hold more and more memory. It can reconnect and catch up with GET /messages.
+ *
+ * The dispatcher also pings every subscriber each pingMillis, so idle connections aren't timed out along the way, and
+ * a subscriber whose pings never complete is evicted the same way.
+ *
+ * If the dispatcher itself falls queueSize events behind, events can't be dropped without subscribers silently
+ * missing them, so every subscriber is closed instead and the backlog is thrown away. The publisher only flags that;
+ * the dispatcher does the closing, so a write never waits on it.
+ */
+public class MessageFeed {
+
+  private static final Logger log = LoggerFactory.getLogger(MessageFeed.class);
+
+  /**
+   * The most messages sent in one frame for a bulk insert.
+   */
+  public static final int FRAME_MESSAGES = 100;
+
+  /**
+   * Where a subscription's events go.
+   */
+  public interface Sink {
+
+    /**
+     * Sends text without blocking. done must be run once the send completes or fails.
+     */
+    void send(String text, Runnable done);
+
+    /**
+     * Sends a keep-alive without blocking. done must be run once it completes or fails.
+     */
+    void ping(Runnable done);
+
+    /**
+     * Closes the subscriber's connection. Called at most once per subscription, and never after unsubscribe().
+     */
+    void close(String reason);
+  }
+
+  public static class Subscription {
+
+    private final Integer postedBy;
+    private final Sink sink;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Subscription(Integer postedBy, Sink sink) {
+      this.postedBy = postedBy;
+      this.sink = sink;
+    }
+  }
+
+  private enum EventType {
+    CREATED("created"), UPDATED("updated"), DELETED("deleted");
+
+    private final String name;
+
+    EventType(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class Event {
+
+    private final EventType type;
+    private final List<Message> messages;
+    // Sent as {"messages":[...]} rather than {"message":{...}}
+    private final boolean bulk;
+
+    private Event(EventType type, List<Message> messages, boolean bulk) {
+      this.type = type;
+      this.messages = messages;
+      this.bulk = bulk;
+    }
+  }
+
+  private final int maxPending;
+  private final long pingNanos;
+  private final BlockingQueue<Event> queue;
+
+  // Subscribers to every message, and subscribers to one account's by posted_by
+  private final Set<Subscription> everyone = ConcurrentHashMap.newKeySet();
+  private final ConcurrentHashMap<Integer, Set<Subscription>> byAccount = new ConcurrentHashMap<>();
+  private final AtomicInteger subscriberCount = new AtomicInteger();
+  // Set when an event didn't fit in the queue, until the dispatcher has closed every subscriber
+  private final AtomicBoolean overflowed = new AtomicBoolean();
+
+  // ~~ METRICS ~~
+  private final LongAdder eventCount = new LongAdder();
+  private final LongAdder sendCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LongAdder overflowCount = new LongAdder();
+
+  /**
+   * @param maxPending the most sends a subscriber may have in flight before it is evicted as too slow
+   * @param pingMillis how often every subscriber is pinged
+   * @param queueSize  how many events may wait for the dispatcher
+   */
+  public MessageFeed(int maxPending, long pingMillis, int queueSize) {
+
+    if (maxPending < 1 || pingMillis < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("maxPending, pingMillis and queueSize must be at least 1, were "
+          + maxPending + ", " + pingMillis + ", " + queueSize);
+    }
+
+    this.maxPending = maxPending;
+    this.pingNanos = TimeUnit.MILLISECONDS.toNanos(pingMillis);
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+
+    Thread dispatcher = new Thread(this::dispatchLoop, "message-feed");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * @param postedBy only this account's messages, or null for everyone's
+   */
+  public Subscription subscribe(Integer postedBy, Sink sink) {
+
+    Subscription subscription = new Subscription(postedBy, sink);
+    subscribers(postedBy).add(subscription);
+    subscriberCount.incrementAndGet();
+    return subscription;
+  }
+
+  /**
+   * Stops sending to the subscription, e.g. because its connection has closed. Safe to call more than once.
+   */
+  public void unsubscribe(Subscription subscription) {
+
+    subscription.closed.set(true);
+    Set<Subscription> subscribers = subscription.postedBy == null ? everyone : byAccount.get(subscription.postedBy);
+    // An account's set stays once it's empty: removing it could race with a subscribe() that has just looked it up
+    if (subscribers != null && subscribers.remove(subscription)) {
+      subscriberCount.decrementAndGet();
+    }
+  }
+
+  private Set<Subscription> subscribers(Integer postedBy) {
+    return postedBy == null ? everyone : byAccount.computeIfAbsent(postedBy, id -> ConcurrentHashMap.newKeySet());
+  }
+
+  public void onInsert(Message message) {
+    publish(new Event(EventType.CREATED, Collections.singletonList(message), false));
+  }
+
+  /**
+   * Publishes the messages of one bulk insert as a single event.
+   */
+  public void onInsert(List<Message> messages) {
+    if (!messages.isEmpty()) {
+      publish(new Event(EventType.CREATED, messages, true));
+    }
+  }
+
+  public void onUpdate(Message message) {
+    publish(new Event(EventType.UPDATED, Collections.singletonList(message), false));
+  }
+
+  public void onDelete(Message message) {
+    publish(new Event(EventType.DELETED, Collections.singletonList(message), false));
+  }
+
+  private void publish(Event event) {
+
+    if (subscriberCount.get() == 0) {
+      return;
+    }
+    if (!queue.offer(event) && overflowed.compareAndSet(false, true)) {
+      overflowCount.increment();
+    }
+  }
+
+  // Throws away the backlog, then closes everyone who may have missed part of it
+  private void closeAllAfterOverflow() {
+
+    log.warn("Message feed is {} events behind; closing every subscriber", queue.size());
+    queue.clear();
+    overflowed.set(false);
+    for (Subscription subscription : everyone) {
+      evict(subscription, "Feed overloaded");
+    }
+    for (Set<Subscription> subscribers : byAccount.values()) {
+      for (Subscription subscription : subscribers) {
+        evict(subscription, "Feed overloaded");
+      }
+    }
+  }
+
+  private void dispatchLoop() {
+
+    long nextPing = System.nanoTime() + pingNanos;
+    while (true) {
+      try {
+        Event event = queue.poll(Math.max(0, nextPing - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (overflowed.get()) {
+          closeAllAfterOverflow();
+        } else if (event != null) {
+          dispatch(event);
+        }
+        if (System.nanoTime() - nextPing >= 0) {
+          pingAll();
+          nextPing = System.nanoTime() + pingNanos;
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException | IOException e) {
+        log.error("Message feed dispatch failed", e);
+      }
+    }
+  }
+
+  private void dispatch(Event event) throws IOException {
+
+    eventCount.increment();
+    if (!event.bulk) {
+      Message message = event.messages.get(0);
+      Set<Subscription> authorSubscribers = byAccount.get(message.getPosted_by());
+      if (everyone.isEmpty() && (authorSubscribers == null || authorSubscribers.isEmpty())) {
+        return;
+      }
+
+      String text = toJson(event.type, message);
+      sendAll(everyone, text);
+      if (authorSubscribers != null) {
+        sendAll(authorSubscribers, text);
+      }
+      return;
+    }
+
+    if (!everyone.isEmpty()) {
+      for (String text : toJsonFrames(event.type, event.messages)) {
+        sendAll(everyone, text);
+      }
+    }
+
+    // Each author's share of the batch, for just the authors someone has subscribed to
+    Map<Integer, List<Message>> byAuthor = new LinkedHashMap<>();
+    for (Message message : event.messages) {
+      Set<Subscription> authorSubscribers = byAccount.get(message.getPosted_by());
+      if (authorSubscribers != null && !authorSubscribers.isEmpty()) {
+        byAuthor.computeIfAbsent(message.getPosted_by(), id -> new ArrayList<>()).add(message);
+      }
+    }
+    for (Map.Entry<Integer, List<Message>> author : byAuthor.entrySet()) {
+      Set<Subscription> authorSubscribers = byAccount.get(author.getKey());
+      for (String text : toJsonFrames(event.type, author.getValue())) {
+        sendAll(authorSubscribers, text);
+      }
+    }
+  }
+
+  private void sendAll(Set<Subscription> subscribers, String text) {
+    for (Subscription subscription : subscribers) {
+      send(subscription, text);
+    }
+  }
+
+  private void send(Subscription subscription, String text) {
+
+    if (!reserve(subscription)) {
+      return;
+    }
+    sendCount.increment();
+    try {
+      subscription.sink.send(text, subscription.pending::decrementAndGet);
+    } catch (RuntimeException e) {
+      // The connection is already gone
+      subscription.pending.decrementAndGet();
+      unsubscribe(subscription);
+    }
+  }
+
+  private void pingAll() {
+
+    for (Subscription subscription : everyone) {
+      ping(subscription);
+    }
+    for (Set<Subscription> subscribers : byAccount.values()) {
+      for (Subscription subscription : subscribers) {
+        ping(subscription);
+      }
+    }
+  }
+
+  private void ping(Subscription subscription) {
+
+    if (!reserve(subscription)) {
+      return;
+    }
+    try {
+      subscription.sink.ping(subscription.pending::decrementAndGet);
+    } catch (RuntimeException e) {
+      subscription.pending.decrementAndGet();
+      unsubscribe(subscription);
+    }
+  }
+
+  // Counts a send against the subscription's buffer, or evicts it if the buffer is full
+  private boolean reserve(Subscription subscription) {
+
+    if (subscription.closed.get()) {
+      return false;
+    }
+    if (subscription.pending.incrementAndGet() > maxPending) {
+      subscription.pending.decrementAndGet();
+      evict(subscription, "Too slow");
+      return false;
+    }
+    return true;
+  }
+
+  private void evict(Subscription subscription, String reason) {
+
+    if (subscription.closed.compareAndSet(false, true)) {
+      evictionCount.increment();
+      unsubscribe(subscription);
+      subscription.sink.close(reason);
+    }
+  }
+
+  private String toJson(EventType type, Message message) throws IOException {
+
+    StringWriter json = new StringWriter(160);
+    try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(json)) {
+      generator.writeStartObject();
+      generator.writeStringField("event", type.name);
+      generator.writeFieldName("message");
+      writeMessage(generator, message);
+      generator.writeEndObject();
+    }
+    return json.toString();
+  }
+
+  // {"event":...,"messages":[...]} frames of up to FRAME_MESSAGES messages each
+  private List<String> toJsonFrames(EventType type, List<Message> messages) throws IOException {
+
+    List<String> frames = new ArrayList<>((messages.size() + FRAME_MESSAGES - 1) / FRAME_MESSAGES);
+    for (int start = 0; start < messages.size(); start += FRAME_MESSAGES) {
+      List<Message> frame = messages.subList(start, Math.min(messages.size(), start + FRAME_MESSAGES));
+      StringWriter json = new StringWriter(160 * frame.size());
+      try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(json)) {
+        generator.writeStartObject();
+        generator.writeStringField("event", type.name);
+        generator.writeArrayFieldStart("messages");
+        for (Message message : frame) {
+          writeMessage(generator, message);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+      frames.add(json.toString());
+    }
+    return frames;
+  }
+
+  private static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+    if (ModelJsonMapper.USE_CODEC) {
+      ModelCodec.writeMessage(generator, message);
+    } else {
+      JsonUtil.MESSAGE_WRITER.writeValue(generator, message);
+    }
+  }
+
+  public long getPingMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(pingNanos);
+  }
+
+  public int getSubscriberCount() {
+    return subscriberCount.get();
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  public long getEventCount() {
+    return eventCount.sum();
+  }
+
+  public long getSendCount() {
+    return sendCount.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  public long getOverflowCount() {
+    return overflowCount.sum();
+  }
+}
@@ -0,0 +1,30 @@
+package Service;
+
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * One page of messages from a keyset-paginated listing, plus the cursor for the page after it.
+ */
+public class MessagePage {
+
+  private final List<Message> messages;
+  private final String nextCursor;
+
+  public MessagePage(List<Message> messages, String nextCursor) {
+    this.messages = messages;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<Message> getMessages() {
+    return messages;
+  }
+
+  /**
+   * @return the cursor to pass as ?after= for the next page, or null if this is the last page
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,155 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageDAO;
+
+/**
+ * Physically removes deleted messages in the background. DELETE /messages/{message_id} only marks a row as a
+ * tombstone, so the request path is a single-row update; this removes the tombstones later, batchSize rows per
+ * statement, using one pooled connection at a time.
+ *
+ * To stay out of the way of foreground traffic it pauses pauseMillis between batches, so a big backlog is worked off
+ * in short deletes with gaps for other writers rather than one long one, and once there is nothing left it sleeps
+ * intervalMillis before looking again.
+ *
+ * A failed batch (say the tables are being recreated) is logged and retried on the next round.
+ */
+public class MessagePurger implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(MessagePurger.class);
+
+  private final int batchSize;
+  private final long pauseMillis;
+  private final long intervalMillis;
+  private final Thread purger;
+
+  // Counted down by close(). The thread waits on it between batches rather than being interrupted, since interrupting
+  // a thread in the middle of H2's file I/O closes the database file under everyone else.
+  private final CountDownLatch closed = new CountDownLatch(1);
+
+  // ~~ METRICS ~~
+  private final LongAdder batchCount = new LongAdder();
+  private final LongAdder rowCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+
+  /**
+   * @param batchSize      the most rows removed by one delete
+   * @param pauseMillis    how long to wait between batches while there is a backlog
+   * @param intervalMillis how long to wait before looking for new tombstones once the backlog is cleared
+   */
+  public MessagePurger(int batchSize, long pauseMillis, long intervalMillis) {
+
+    if (batchSize < 1 || pauseMillis < 0 || intervalMillis < 1) {
+      throw new IllegalArgumentException("batchSize and intervalMillis must be at least 1 and pauseMillis at least 0, "
+          + "were " + batchSize + ", " + intervalMillis + ", " + pauseMillis);
+    }
+
+    this.batchSize = batchSize;
+    this.pauseMillis = pauseMillis;
+    this.intervalMillis = intervalMillis;
+
+    this.purger = new Thread(this::purgeLoop, "message-purger");
+    this.purger.setDaemon(true);
+    this.purger.start();
+  }
+
+  /**
+   * Removes every tombstone there is right now, on the calling thread, without pausing between batches.
+   * @return how many rows were removed
+   */
+  public synchronized int purge() throws SQLException {
+
+    int total = 0;
+    int removed;
+    do {
+      removed = purgeBatch();
+      total += removed;
+    } while (removed == batchSize);
+    return total;
+  }
+
+  /**
+   * Stops the background thread. Tombstones that are left stay hidden from reads and are removed the next time a
+   * purger runs.
+   */
+  @Override
+  public void close() {
+
+    closed.countDown();
+    try {
+      purger.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void purgeLoop() {
+
+    long sleepMillis = intervalMillis;
+    while (true) {
+      try {
+        if (closed.await(sleepMillis, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      try {
+        sleepMillis = purgeOnce() == batchSize ? pauseMillis : intervalMillis;
+      } catch (SQLException e) {
+        log.debug("Purging deleted messages failed, will retry", e);
+        failureCount.increment();
+        sleepMillis = intervalMillis;
+      }
+    }
+  }
+
+  // Held against purge(), so a caller draining the backlog and the background thread don't race for the same rows.
+  private synchronized int purgeOnce() throws SQLException {
+    return purgeBatch();
+  }
+
+  private int purgeBatch() throws SQLException {
+
+    int removed = MessageDAO.purgeDeletedMessages(batchSize);
+    if (removed > 0) {
+      batchCount.increment();
+      rowCount.add(removed);
+    }
+    return removed;
+  }
+
+  // ~~ METRICS ~~
+
+  /** Deletes that removed at least one row. */
+  public long getBatchCount() {
+    return batchCount.sum();
+  }
+
+  /** Tombstoned rows removed so far. */
+  public long getRowCount() {
+    return rowCount.sum();
+  }
+
+  /** Background batches that threw. */
+  public long getFailureCount() {
+    return failureCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "MessagePurger{" +
+        "batches=" + getBatchCount() +
+        ", rows=" + getRowCount() +
+        ", failures=" + getFailureCount() +
+        '}';
+  }
+}
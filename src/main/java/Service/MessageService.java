@@ -1,10 +1,22 @@
 package Service;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import DAO.MessageDAO;
+import DAO.RowCallback;
 import Model.Message;
+import Util.ConnectionUtil;
+import Util.IntLruCache;
+import Util.Metrics;
+import Util.PageCursor;
 
 /* Message Model:
  * public int message_id;
@@ -18,36 +30,487 @@ import Model.Message;
  * posted_by int,
  * message_text varchar(255),
  * time_posted_epoch bigint,
+ * deleted boolean default false not null,
  * foreign key (posted_by) references  account(account_id)
  */
 
 public class MessageService {
+
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int MAX_PAGE_SIZE = 1000;
+  public static final int MAX_LOOKUP_IDS = 1000;
+
+  // The in-memory updates that follow each new message, timed like a DAO method
+  private static final Metrics.Operation ON_INSERT = Metrics.operation("MessageService.onInsert");
+
+  /**
+   * Read-through cache in front of MessageDAO.getMessageById(), for hot messages that get polled a lot. Bounded by
+   * size and entry age; updates and deletes remove entries. Cached Message objects are shared between requests, so
+   * callers must not modify them.
+   */
+  private static final IntLruCache<Message> messageCache = new IntLruCache<>(
+      Integer.getInteger("socialmedia.cache.messages.maxSize", 10_000),
+      Long.getLong("socialmedia.cache.messages.ttlMillis", 60_000));
+
+  /**
+   * Per-account timelines for GET /accounts/{account_id}/messages, kept current by the write methods below.
+   */
+  private static final TimelineCache timelines = new TimelineCache(
+      Integer.getInteger("socialmedia.cache.timelines.maxAccounts", 1_000),
+      Integer.getInteger("socialmedia.cache.timelines.maxMessagesPerAccount", 10_000));
+
+  /**
+   * Full-text search over message_text for GET /messages/search, kept current by the write methods below.
+   */
+  private static final SearchIndex searchIndex = new SearchIndex();
+
+  /**
+   * Pushes every created, updated and deleted message to live subscribers (GET /messages/live).
+   */
+  private static final MessageFeed feed = new MessageFeed(
+      Integer.getInteger("socialmedia.live.maxPending", 256),
+      Long.getLong("socialmedia.live.pingMillis", 15_000),
+      Integer.getInteger("socialmedia.live.queueSize", 10_000));
+
+  /**
+   * Versions of all messages, each account's and each message, for the ETags on GET /messages,
+   * GET /accounts/{account_id}/messages and GET /messages/{message_id}. Bumped last by every write below, once
+   * everything a read could see has changed.
+   */
+  private static final MessageVersions versions = new MessageVersions(
+      Integer.getInteger("socialmedia.etag.slots", 65_536));
+
+  /**
+   * The GET /messages response body, pre-encoded as JSON and gzip and rebuilt in the background after every write. Off
+   * with -Dsocialmedia.cache.allMessages.enabled=false.
+   */
+  private static final EncodedMessagesCache encodedMessages =
+      Boolean.parseBoolean(System.getProperty("socialmedia.cache.allMessages.enabled", "true"))
+      ? new EncodedMessagesCache(versions,
+          Integer.getInteger("socialmedia.cache.allMessages.maxMessages", 100_000),
+          Long.getLong("socialmedia.cache.allMessages.pauseMillis", 50))
+      : null;
+
+  /**
+   * When true (the default), new messages are inserted in groups by a MessageWriteBatcher instead of one insert and
+   * commit per request.
+   */
+  public static final boolean BATCH_WRITES = Boolean.parseBoolean(System.getProperty("socialmedia.batch.enabled", "true"));
+
+  private static final MessageWriteBatcher writeBatcher = BATCH_WRITES ? new MessageWriteBatcher(
+      Integer.getInteger("socialmedia.batch.maxRows", 64),
+      Long.getLong("socialmedia.batch.lingerMicros", 100),
+      Integer.getInteger("socialmedia.batch.queueSize", 10_000)) : null;
+
+  /**
+   * Messages deleted in the last minute, by id. An insert's hooks run after its commit, so a DELETE can land in
+   * between; the hooks check here afterwards and take the message back out of the caches rather than leave a tombstone
+   * in them.
+   */
+  private static final IntLruCache<Message> recentlyDeleted = new IntLruCache<>(
+      Integer.getInteger("socialmedia.cache.recentlyDeleted.maxSize", 4_096), 60_000);
+
+  /**
+   * Removes deleted messages from the table in the background. Off with -Dsocialmedia.purge.enabled=false, in which
+   * case tombstones stay (hidden from reads) until a purger runs again.
+   */
+  private static final MessagePurger purger = Boolean.parseBoolean(System.getProperty("socialmedia.purge.enabled", "true"))
+      ? new MessagePurger(
+          Integer.getInteger("socialmedia.purge.batchSize", 200),
+          Long.getLong("socialmedia.purge.pauseMillis", 20),
+          Long.getLong("socialmedia.purge.intervalMillis", 1_000))
+      : null;
+
+  static {
+    // Everything cached is stale once the tables are recreated.
+    ConnectionUtil.addResetListener(messageCache::clear);
+    ConnectionUtil.addResetListener(recentlyDeleted::clear);
+
+    if (writeBatcher != null) {
+      // Write out anything still queued before the JVM exits
+      Runtime.getRuntime().addShutdownHook(new Thread(writeBatcher::close, "message-writer-shutdown"));
+    }
+
+    registerMetrics();
+  }
+
+  private static void registerMetrics() {
+
+    registerMetrics("messages", messageCache);
+    registerMetrics("timelines", timelines.getCache());
+
+    if (writeBatcher != null) {
+      Metrics.gauge("socialmedia_write_batcher_queued", "New messages waiting for the writer.", "",
+          writeBatcher::getQueueDepth);
+      Metrics.counter("socialmedia_write_batcher_batches_total", "Batches of new messages written.", "",
+          writeBatcher::getBatchCount);
+      Metrics.counter("socialmedia_write_batcher_rows_total", "New messages written in batches.", "",
+          writeBatcher::getRowCount);
+      Metrics.counter("socialmedia_write_batcher_fallbacks_total", "Batches retried row by row.", "",
+          writeBatcher::getFallbackCount);
+    }
+    if (purger != null) {
+      Metrics.counter("socialmedia_purger_rows_total", "Deleted messages removed from the table.", "",
+          purger::getRowCount);
+      Metrics.counter("socialmedia_purger_failures_total", "Purge batches that failed.", "",
+          purger::getFailureCount);
+    }
+    if (encodedMessages != null) {
+      Metrics.gauge("socialmedia_encoded_messages_bytes", "Size of the pre-encoded GET /messages response.", "",
+          encodedMessages::getByteCount);
+      Metrics.counter("socialmedia_encoded_messages_requests_total", "Pre-encoded response lookups by result.",
+          "result=\"hit\"", encodedMessages::getHitCount);
+      Metrics.counter("socialmedia_encoded_messages_requests_total", "Pre-encoded response lookups by result.",
+          "result=\"miss\"", encodedMessages::getMissCount);
+      Metrics.counter("socialmedia_encoded_messages_rebuilds_total", "Times the GET /messages response was encoded.",
+          "", encodedMessages::getRebuildCount);
+    }
+    Metrics.gauge("socialmedia_live_subscribers", "Live message feed subscribers.", "", feed::getSubscriberCount);
+    Metrics.gauge("socialmedia_live_queued", "Message changes waiting for the live feed's dispatcher.", "",
+        feed::getQueueDepth);
+    Metrics.counter("socialmedia_live_events_total", "Message changes dispatched to live subscribers.", "",
+        feed::getEventCount);
+    Metrics.counter("socialmedia_live_sends_total", "Message changes sent to live subscribers.", "",
+        feed::getSendCount);
+    Metrics.counter("socialmedia_live_evictions_total", "Live subscribers closed for falling behind.", "",
+        feed::getEvictionCount);
+    Metrics.counter("socialmedia_live_overflows_total", "Times the live feed's dispatcher fell too far behind.", "",
+        feed::getOverflowCount);
+    Metrics.gauge("socialmedia_search_documents", "Messages in the search index.", "",
+        searchIndex::getDocumentCount);
+    Metrics.gauge("socialmedia_search_terms", "Distinct words in the search index.", "", searchIndex::getTermCount);
+    Metrics.gauge("socialmedia_search_posting_bytes", "Compressed size of the search index's posting lists.", "",
+        searchIndex::getPostingBytes);
+  }
+
+  static void registerMetrics(String name, IntLruCache<?> cache) {
+
+    String labels = "cache=\"" + name + "\"";
+    Metrics.gauge("socialmedia_cache_entries", "Entries in each cache.", labels, cache::size);
+    Metrics.counter("socialmedia_cache_requests_total", "Cache lookups by result.", labels + ",result=\"hit\"",
+        cache::getHitCount);
+    Metrics.counter("socialmedia_cache_requests_total", "Cache lookups by result.", labels + ",result=\"miss\"",
+        cache::getMissCount);
+    Metrics.counter("socialmedia_cache_evictions_total", "Entries evicted from each cache.", labels,
+        cache::getEvictionCount);
+  }
+
+  public static IntLruCache<Message> getMessageCache() {
+    return messageCache;
+  }
+
+  public static TimelineCache getTimelines() {
+    return timelines;
+  }
+
+  public static SearchIndex getSearchIndex() {
+    return searchIndex;
+  }
+
+  public static MessageFeed getFeed() {
+    return feed;
+  }
+
+  public static MessageVersions getVersions() {
+    return versions;
+  }
+
+  /**
+   * @return every message, pre-encoded, if that is up to date with every write so far; otherwise null, and the caller
+   *         should read them with getAllMessages() or streamAllMessages()
+   */
+  public static EncodedMessagesCache.Body getEncodedMessages() {
+    return encodedMessages == null ? null : encodedMessages.get();
+  }
+
+  /**
+   * Builds the search index from the database, if it hasn't been already. Searching does this on its own if needed;
+   * call it at startup so the first search doesn't wait.
+   */
+  public static boolean loadSearchIndex() {
+    return searchIndex.load();
+  }
+
+  /**
+   * @return the write batcher, or null if BATCH_WRITES is off
+   */
+  public static MessageWriteBatcher getWriteBatcher() {
+    return writeBatcher;
+  }
+
+  /**
+   * @return the purger, or null if purging is turned off
+   */
+  public static MessagePurger getPurger() {
+    return purger;
+  }
+
+  /**
+   * Blocks until every message accepted so far has been written to the database.
+   */
+  public static void drainWrites() {
+    if (writeBatcher != null) {
+      writeBatcher.drain();
+    }
+  }
   
   public static Optional<Message> newMessage(Message message) {
 
-    if (message.getMessage_text() == null || message.getMessage_text().trim().isEmpty()
-        || message.getMessage_text().length() >= 255) {
-      // return empty Optional if message empty or too long
+    if (!isValidMessage(message)) {
+      // return empty Optional if message empty or too long, or there's no such account
       return Optional.empty();
 
     } else {
-      return MessageDAO.newMessage(message);
+      // This thread is waiting for the insert anyway, so the hooks run here rather than on the writer
+      Optional<Message> newMessage = writeBatcher != null
+          ? writeBatcher.submit(message).join()
+          : MessageDAO.newMessage(message);
+      newMessage.ifPresent(MessageService::onInsert);
+
+      return newMessage;
+    }
+  }
+
+  /**
+   * newMessage() through the write batcher, without waiting for the insert. Only call this when BATCH_WRITES is on.
+   */
+  static CompletableFuture<Optional<Message>> submitMessage(Message message) {
+
+    if (!isValidMessage(message)) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    // On the writer thread as it completes each future, in commit order. The hooks only touch memory, and running
+    // them there keeps them bounded by the batcher's own queue instead of needing a pool of their own.
+    return writeBatcher.submit(message).thenApply(newMessage -> {
+      newMessage.ifPresent(MessageService::onInsert);
+      return newMessage;
+    });
+  }
+
+  private static void onInsert(Message message) {
+
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      timelines.onInsert(message);
+      searchIndex.index(message);
+      FollowService.onInsert(message);
+      if (!removeIfDeleted(message)) {
+        feed.onInsert(message);
+      }
+      onChange(message);
+      failed = false;
+    } finally {
+      ON_INSERT.record(start, failed);
+    }
+  }
+
+  // Called after an insert's hooks have added message to the caches. If it has been deleted since it was committed,
+  // takes it back out. deleteMessage() records the id before it removes anything, so either it runs after the hooks
+  // and removes the message itself, or this sees the record.
+  private static boolean removeIfDeleted(Message message) {
+
+    if (recentlyDeleted.peek(message.getMessage_id()) == null) {
+      return false;
+    }
+    timelines.onDelete(message);
+    searchIndex.remove(message.getMessage_id());
+    FollowService.onDelete(message);
+    return true;
+  }
+
+  // Last thing after every write, once the change is visible to every read
+  private static void onChange(Message message) {
+    versions.onChange(message.getMessage_id(), message.getPosted_by());
+    if (encodedMessages != null) {
+      encodedMessages.rebuild();
     }
   }
+
+  /**
+   * Inserts messages as one JDBC batch, for bulk loads. Each one is validated like newMessage(). Bypasses the write
+   * batcher, since the caller has already done the batching.
+   * @return one result per message, in order: the inserted message, or empty if it was rejected
+   */
+  public static List<Optional<Message>> newMessages(List<Message> messages) {
+
+    List<Optional<Message>> results = new ArrayList<>(messages.size());
+    List<Message> valid = new ArrayList<>(messages.size());
+    // Checked once, so the second pass lines up with exactly the rows that were inserted
+    boolean[] isValid = new boolean[messages.size()];
+    for (int i = 0; i < messages.size(); i++) {
+      results.add(Optional.empty());
+      Message message = messages.get(i);
+      if (isValidMessage(message)) {
+        isValid[i] = true;
+        valid.add(message);
+      }
+    }
+
+    List<Optional<Message>> inserted = new ArrayList<>(valid.size());
+    try {
+      for (Message message : MessageDAO.newMessages(valid)) {
+        inserted.add(Optional.of(message));
+      }
+    } catch (SQLException e) {
+      // Some row was bad (e.g. no such posted_by) and the batch was rolled back. Find it by inserting one at a time.
+      inserted.clear();
+      for (Message message : valid) {
+        inserted.add(MessageDAO.newMessage(message));
+      }
+    }
+
+    // Line the inserted rows back up with the input, and reload affected timelines rather than patching them a
+    // message at a time.
+    HashSet<Integer> accounts = new HashSet<>();
+    List<Message> created = new ArrayList<>(valid.size());
+    int next = 0;
+    for (int i = 0; i < messages.size(); i++) {
+      if (isValid[i]) {
+        Optional<Message> result = inserted.get(next++);
+        results.set(i, result);
+        result.ifPresent(message -> {
+          accounts.add(message.getPosted_by());
+          searchIndex.index(message);
+          FollowService.onInsert(message);
+          if (!removeIfDeleted(message)) {
+            created.add(message);
+          }
+        });
+      }
+    }
+    for (int account : accounts) {
+      timelines.invalidate(account);
+    }
+    // One event for the whole batch, however many rows it has
+    feed.onInsert(created);
+    for (Optional<Message> result : inserted) {
+      result.ifPresent(MessageService::onChange);
+    }
+
+    return results;
+  }
+
+  /**
+   * @return true if the message can be inserted as far as we can tell without asking the database: its text is valid
+   *         and its posted_by account exists
+   */
+  private static boolean isValidMessage(Message message) {
+    return isValidText(message.getMessage_text()) && AccountService.accountExists(message.getPosted_by());
+  }
+
+  /**
+   * @return true if text is acceptable as a message_text: not blank and under 255 characters
+   */
+  public static boolean isValidText(String text) {
+    return text != null && !text.trim().isEmpty() && text.length() < 255;
+  }
   
   public static List<Message> getAllMessages() {
     // No business logic to perform. Pass directly to DAO
     return MessageDAO.getAllMessages();
   }
 
-  public static Optional<Message> getMessageById(int id) {
+  public static void streamAllMessages(RowCallback<Message> callback) throws SQLException, IOException {
     // No business logic to perform. Pass directly to DAO
-    return MessageDAO.getMessageById(id);
+    MessageDAO.streamAllMessages(callback);
+  }
+
+  public static Optional<Message> getMessageById(int id) {
+
+    Message cached = messageCache.get(id);
+    if (cached != null) {
+      return Optional.of(cached);
+    }
+
+    // Only cache what we read if no update or delete raced with the read (see IntLruCache.putIfUnchanged).
+    long stamp = messageCache.stamp(id);
+    Optional<Message> message = MessageDAO.getMessageById(id);
+    message.ifPresent(found -> messageCache.putIfUnchanged(id, found, stamp));
+
+    return message;
   }
 
+  /**
+   * Many getMessageById() calls in one: cached messages are served from the cache and the rest are read with a
+   * single query.
+   * @return the messages that exist, in the order their ids were given (ids that are asked for twice appear twice)
+   * @throws IllegalArgumentException if there are more than MAX_LOOKUP_IDS ids
+   */
+  public static List<Message> getMessagesByIds(int[] ids) {
+
+    if (ids.length > MAX_LOOKUP_IDS) {
+      throw new IllegalArgumentException("At most " + MAX_LOOKUP_IDS + " ids can be looked up at once, got " + ids.length);
+    }
+
+    Message[] found = new Message[ids.length];
+    int[] missing = new int[ids.length];
+    long[] stamps = new long[ids.length];
+    int missingCount = 0;
+
+    for (int i = 0; i < ids.length; i++) {
+      found[i] = messageCache.get(ids[i]);
+      if (found[i] == null) {
+        stamps[missingCount] = messageCache.stamp(ids[i]);
+        missing[missingCount++] = ids[i];
+      }
+    }
+
+    if (missingCount > 0) {
+      List<Message> loaded;
+      try {
+        loaded = MessageDAO.getMessagesByIds(Arrays.copyOf(missing, missingCount));
+      } catch (SQLException e) {
+        e.printStackTrace();
+        loaded = new ArrayList<>();
+      }
+
+      HashMap<Integer, Message> byId = new HashMap<>();
+      for (Message message : loaded) {
+        byId.put(message.getMessage_id(), message);
+      }
+      for (int i = 0; i < missingCount; i++) {
+        Message message = byId.get(missing[i]);
+        if (message != null) {
+          messageCache.putIfUnchanged(missing[i], message, stamps[i]);
+        }
+      }
+      for (int i = 0; i < ids.length; i++) {
+        if (found[i] == null) {
+          found[i] = byId.get(ids[i]);
+        }
+      }
+    }
+
+    List<Message> messages = new ArrayList<>(ids.length);
+    for (Message message : found) {
+      if (message != null) {
+        messages.add(message);
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Marks the message deleted. It disappears from every read, cached or not, as soon as this returns; the row itself
+   * is removed later by the purger.
+   */
   public static Optional<Message> deleteMessage(int id) {
-    // No business logic to perform. Pass directly to DAO
-    return MessageDAO.deleteMessage(id);
+
+    Optional<Message> deletedMessage = MessageDAO.deleteMessage(id);
+    messageCache.remove(id);
+    deletedMessage.ifPresent(deleted -> {
+      // Before the caches, for an insert whose hooks haven't run yet. See removeIfDeleted().
+      recentlyDeleted.put(id, deleted);
+      timelines.onDelete(deleted);
+      searchIndex.remove(id);
+      FollowService.onDelete(deleted);
+      feed.onDelete(deleted);
+      onChange(deleted);
+    });
+
+    return deletedMessage;
   }
 
   public static Optional<Message> updateMessage(int id, String updatedMessage) {
@@ -56,13 +519,220 @@ public class MessageService {
     if (updatedMessage == null || updatedMessage.trim() == "" || updatedMessage.length() >= 255) {
       return Optional.empty();
     } else {
-      return MessageDAO.updateMessage(id, updatedMessage);
+      Optional<Message> message = MessageDAO.updateMessage(id, updatedMessage);
+      message.ifPresent(updated -> {
+        // Dropped rather than replaced: two updates can commit in one order and get here in the other, and the next
+        // read reloads whichever committed last
+        messageCache.remove(id);
+        timelines.onUpdate(updated);
+        searchIndex.index(updated);
+        feed.onUpdate(updated);
+        onChange(updated);
+      });
+
+      return message;
     }
   }
 
   public static List<Message> getMessagesByUserId(int id) {
-    // No business logic to perform. Pass directly to DAO
+
+    List<Message> timeline = timelines.get(id);
+    if (timeline != null) {
+      return timeline;
+    }
+    // Too many messages to keep in memory
     return MessageDAO.getMessagesByUserId(id);
   }
 
+  public static void streamMessagesByUserId(int id, RowCallback<Message> callback) throws SQLException, IOException {
+
+    List<Message> timeline = timelines.get(id);
+    if (timeline == null) { // Too many messages to keep in memory, so stream them from the database instead
+      MessageDAO.streamMessagesByUserId(id, callback);
+      return;
+    }
+
+    for (Message message : timeline) {
+      callback.accept(message);
+    }
+  }
+
+  /**
+   * One page of all messages in message_id order.
+   * @param after  the cursor from the previous page, or null for the first page
+   * @param limit  page size, between 1 and MAX_PAGE_SIZE
+   * @throws IllegalArgumentException if the cursor or limit is invalid
+   */
+  public static MessagePage getMessagePage(String after, int limit) {
+
+    int afterId = decodeCursor(after);
+    checkLimit(limit);
+
+    // Ask for one extra row so we know whether there is another page without a separate count query.
+    return toPage(MessageDAO.getMessagesAfter(afterId, limit + 1), limit);
+  }
+
+  /**
+   * One page of an account's messages in message_id order. See getMessagePage().
+   */
+  public static MessagePage getMessagePageByUserId(int id, String after, int limit) {
+
+    int afterId = decodeCursor(after);
+    checkLimit(limit);
+
+    List<Message> timeline = timelines.get(id);
+    if (timeline != null) {
+      // Slice the page straight out of the cached timeline
+      int index = TimelineCache.indexOf(timeline, afterId);
+      int from = index >= 0 ? index + 1 : -index - 1;
+      int to = Math.min(timeline.size(), from + limit + 1);
+      return toPage(timeline.subList(from, to), limit);
+    }
+
+    try {
+      return toPage(MessageDAO.getMessagesByUserIdAfter(id, afterId, limit + 1), limit);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new MessagePage(new ArrayList<>(), null);
+    }
+  }
+
+  /**
+   * One page of the messages matching a search, most recent first. See SearchIndex for the query syntax.
+   * @param after  the cursor from the previous page, or null for the first page
+   * @param limit  page size, between 1 and MAX_PAGE_SIZE
+   * @throws IllegalArgumentException if the cursor or limit is invalid, or the query has too many words
+   */
+  public static MessagePage searchMessages(String query, String after, int limit) {
+
+    long[] cursor = decodeTimeCursor(after, Long.MAX_VALUE, Integer.MAX_VALUE);
+    checkLimit(limit);
+
+    // One extra hit tells us whether there is another page
+    List<SearchIndex.Hit> hits = searchIndex.search(query, cursor[0], (int) cursor[1], limit + 1);
+    int count = Math.min(hits.size(), limit);
+    int[] ids = new int[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = hits.get(i).getMessageId();
+    }
+
+    // The messages themselves come from the cache or one query, in ranked order
+    List<Message> messages = getMessagesByIds(ids);
+    String nextCursor = null;
+    if (hits.size() > limit) {
+      SearchIndex.Hit last = hits.get(limit - 1);
+      nextCursor = PageCursor.encode(last.getTimePosted(), last.getMessageId());
+    }
+    return new MessagePage(messages, nextCursor);
+  }
+
+  /**
+   * One page of the messages posted in a time range, in time order.
+   * @param postedBy only this account's messages, or null for everyone's
+   * @param since    the earliest time_posted_epoch to include
+   * @param until    the time_posted_epoch to stop before
+   * @param after    the cursor from the previous page, or null for the first page
+   * @param limit    page size, between 1 and MAX_PAGE_SIZE
+   * @throws IllegalArgumentException if the cursor, limit or range is invalid
+   */
+  public static MessagePage getMessagePageInTimeRange(Integer postedBy, long since, long until, String after,
+      int limit) {
+
+    checkTimeRange(since, until);
+    long[] cursor = decodeTimeCursor(after, Long.MIN_VALUE, -1);
+    checkLimit(limit);
+
+    List<Message> messages;
+    try {
+      messages = MessageDAO.getMessagesInTimeRange(postedBy, since, until, cursor[0], (int) cursor[1], limit + 1);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return new MessagePage(new ArrayList<>(), null);
+    }
+
+    if (messages.size() <= limit) {
+      return new MessagePage(messages, null);
+    }
+    List<Message> page = messages.subList(0, limit);
+    Message last = page.get(limit - 1);
+    return new MessagePage(page, PageCursor.encode(last.getTime_posted_epoch(), last.getMessage_id()));
+  }
+
+  /**
+   * Every message posted in a time range, in time order, streamed to the callback. See getMessagePageInTimeRange().
+   * @throws IllegalArgumentException if since is after until
+   */
+  public static void streamMessagesInTimeRange(Integer postedBy, long since, long until,
+      RowCallback<Message> callback) throws SQLException, IOException {
+
+    checkTimeRange(since, until);
+    MessageDAO.streamMessagesInTimeRange(postedBy, since, until, callback);
+  }
+
+  /**
+   * streamMessagesInTimeRange() collected into a list.
+   */
+  public static List<Message> getMessagesInTimeRange(Integer postedBy, long since, long until) {
+
+    checkTimeRange(since, until);
+    List<Message> messages = new ArrayList<>();
+    try {
+      MessageDAO.streamMessagesInTimeRange(postedBy, since, until, messages::add);
+    } catch (SQLException | IOException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
+    return messages;
+  }
+
+  private static void checkTimeRange(long since, long until) {
+
+    if (since > until) {
+      throw new IllegalArgumentException("since must not be after until, got " + since + " and " + until);
+    }
+  }
+
+  // A cursor holding (time_posted_epoch, message_id), or the defaults if there is none
+  private static long[] decodeTimeCursor(String after, long defaultTime, int defaultId) {
+
+    if (after == null || after.isEmpty()) {
+      return new long[] { defaultTime, defaultId };
+    }
+    long[] keys = PageCursor.decode(after, 2);
+    if (keys[1] < 0 || keys[1] > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Malformed cursor: " + after);
+    }
+    return keys;
+  }
+
+  private static int decodeCursor(String after) {
+
+    if (after == null || after.isEmpty()) {
+      return 0;
+    }
+    long afterId = PageCursor.decode(after, 1)[0];
+    if (afterId < 0 || afterId > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Malformed cursor: " + after);
+    }
+    return (int) afterId;
+  }
+
+  static void checkLimit(int limit) {
+
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE + ", was " + limit);
+    }
+  }
+
+  private static MessagePage toPage(List<Message> messages, int limit) {
+
+    if (messages.size() <= limit) {
+      return new MessagePage(messages, null);
+    }
+
+    List<Message> page = messages.subList(0, limit);
+    String nextCursor = PageCursor.encode(page.get(limit - 1).getMessage_id());
+    return new MessagePage(page, nextCursor);
+  }
+
 }
@@ -0,0 +1,80 @@
+package Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Util.ConnectionUtil;
+
+/**
+ * Version counters for conditional GETs: one for all messages, one per account and one per message. MessageService
+ * bumps them on every write, so a reader can tell whether a response it already sent is still current without going to
+ * the database.
+ *
+ * Every counter only ever goes up. MessageService bumps them after the change is committed and visible to reads, and
+ * readers take a version before they read, so a response is never labelled with a version newer than its contents. (It
+ * can be labelled with an older one, which only costs the client a full response next time.)
+ *
+ * Per-account and per-message counters are striped: ids share a slot when they are equal modulo slots, and a write to
+ * one bumps the version of the other. That costs the other an unneeded full response now and then, in return for
+ * fixed memory however many messages and accounts there are.
+ *
+ * Versions start over when the app starts and when the tables are reset, so each run gets a random epoch, and a
+ * version only means anything together with the epoch it was read with.
+ */
+public class MessageVersions {
+
+  private final AtomicLong all = new AtomicLong();
+  private final AtomicLongArray accounts;
+  private final AtomicLongArray messages;
+  private final int mask;
+  private volatile long epoch = ThreadLocalRandom.current().nextLong();
+
+  /**
+   * @param slots how many counters to keep for accounts, and again for messages. Rounded up to a power of two.
+   */
+  public MessageVersions(int slots) {
+
+    if (slots < 1 || slots > 1 << 30) {
+      throw new IllegalArgumentException("slots must be between 1 and 2^30, was " + slots);
+    }
+
+    int size = Integer.highestOneBit(slots) == slots ? slots : Integer.highestOneBit(slots) << 1;
+    this.accounts = new AtomicLongArray(size);
+    this.messages = new AtomicLongArray(size);
+    this.mask = size - 1;
+
+    ConnectionUtil.addResetListener(() -> epoch = ThreadLocalRandom.current().nextLong());
+  }
+
+  /**
+   * Records a committed change to a message posted by postedBy.
+   */
+  public void onChange(int messageId, int postedBy) {
+    messages.incrementAndGet(messageId & mask);
+    accounts.incrementAndGet(postedBy & mask);
+    all.incrementAndGet();
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * @return the version of every message at once, for lists that can include any of them
+   */
+  public long getAllVersion() {
+    return all.get();
+  }
+
+  /**
+   * @return the version of the account's messages
+   */
+  public long getAccountVersion(int accountId) {
+    return accounts.get(accountId & mask);
+  }
+
+  public long getMessageVersion(int messageId) {
+    return messages.get(messageId & mask);
+  }
+}
@@ -0,0 +1,274 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * Group commit for new messages. Concurrent newMessage calls are queued and a single writer thread inserts them
+ * together: it takes whatever is waiting, lingers up to lingerMicros for more until it has maxRows, and writes the
+ * lot with MessageDAO.newMessages() - one JDBC batch, one commit. Each caller's future then completes with its own
+ * row and generated message_id.
+ *
+ * If a batch fails (say one row's posted_by doesn't exist) it is rolled back and its rows are retried one at a time,
+ * so only the bad rows come back empty, the same as an unbatched insert. Anything else that goes wrong fails that
+ * batch's futures, and the writer moves on to the next batch.
+ *
+ * Futures are completed on the writer thread, so anything chained onto them should be quick.
+ *
+ * drain() blocks until everything submitted so far is written, and close() stops accepting new messages and then
+ * drains, so a message that was accepted is never dropped on shutdown.
+ */
+public class MessageWriteBatcher implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(MessageWriteBatcher.class);
+
+  private final int maxRows;
+  private final long lingerNanos;
+  private final BlockingQueue<PendingWrite> queue;
+  private final Thread writer;
+
+  // Submitters hold the read lock while queueing, so once close() has the write lock nothing can slip in behind
+  // SHUTDOWN.
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+  private boolean closed = false;
+
+  // ~~ METRICS ~~
+  private final LongAdder batchCount = new LongAdder();
+  private final LongAdder rowCount = new LongAdder();
+  private final LongAdder fallbackCount = new LongAdder();
+
+  /**
+   * @param maxRows      the most rows written in one batch
+   * @param lingerMicros how long the writer waits for a batch to fill before writing what it has. 0 writes whatever
+   *                     queued up while the previous batch was being written.
+   * @param queueSize    how many messages may wait for the writer. Callers block while it is full.
+   */
+  public MessageWriteBatcher(int maxRows, long lingerMicros, int queueSize) {
+
+    if (maxRows < 1 || lingerMicros < 0 || queueSize < 1) {
+      throw new IllegalArgumentException("maxRows and queueSize must be at least 1 and lingerMicros at least 0, were "
+          + maxRows + ", " + queueSize + ", " + lingerMicros);
+    }
+
+    this.maxRows = maxRows;
+    this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+    this.queue = new LinkedBlockingQueue<>(queueSize);
+
+    this.writer = new Thread(this::writeLoop, "message-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Queues message to be inserted with the next batch.
+   * @return a future for the inserted message, or an empty Optional if it couldn't be inserted. Fails with a
+   *         RejectedExecutionException if the batcher has been closed.
+   */
+  public CompletableFuture<Optional<Message>> submit(Message message) {
+
+    PendingWrite write = new PendingWrite(message);
+
+    closeLock.readLock().lock();
+    try {
+      if (closed) {
+        write.result.completeExceptionally(new RejectedExecutionException("MessageWriteBatcher is closed"));
+      } else {
+        queue.put(write);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      write.result.completeExceptionally(e);
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    return write.result;
+  }
+
+  /**
+   * Blocks until every message submitted before this call has been written.
+   */
+  public void drain() {
+
+    CompletableFuture<Optional<Message>> marker = submit(null);
+    try {
+      marker.join();
+    } catch (RuntimeException e) {
+      // Closed, and close() waits for the writer itself.
+    }
+  }
+
+  /**
+   * Stops accepting new messages and waits for the queued ones to be written.
+   */
+  @Override
+  public void close() {
+
+    closeLock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      queue.put(PendingWrite.SHUTDOWN);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLoop() {
+
+    List<PendingWrite> batch = new ArrayList<>(maxRows);
+
+    while (true) {
+      boolean shutdown = false;
+      try {
+        batch.add(queue.take());
+
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxRows) {
+          // Anything already waiting joins the batch without delay. Then linger for the rest.
+          PendingWrite next = queue.poll();
+          if (next == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+              break;
+            }
+            next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+              break;
+            }
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        shutdown = true;
+      }
+
+      // SHUTDOWN is the last thing ever queued, so when it turns up everything before it is in this batch.
+      shutdown |= batch.remove(PendingWrite.SHUTDOWN);
+      try {
+        write(batch);
+      } catch (Throwable e) {
+        // Only this batch's callers see the failure. The writer carries on with the next batch.
+        log.error("Writing a batch of " + batch.size() + " messages failed", e);
+        for (PendingWrite write : batch) {
+          write.result.completeExceptionally(e);
+        }
+      }
+      batch.clear();
+
+      if (shutdown) {
+        return;
+      }
+    }
+  }
+
+  private void write(List<PendingWrite> batch) {
+
+    List<PendingWrite> writes = new ArrayList<>(batch.size());
+    List<Message> messages = new ArrayList<>(batch.size());
+    for (PendingWrite write : batch) {
+      if (write.message != null) { // Not a drain() marker
+        writes.add(write);
+        messages.add(write.message);
+      }
+    }
+
+    if (!messages.isEmpty()) {
+      try {
+        List<Message> inserted = MessageDAO.newMessages(messages);
+        for (int i = 0; i < writes.size(); i++) {
+          writes.get(i).result.complete(Optional.of(inserted.get(i)));
+        }
+        batchCount.increment();
+        rowCount.add(writes.size());
+
+      } catch (SQLException e) {
+        // Find the bad rows by inserting them one at a time
+        log.debug("Batch of " + writes.size() + " messages failed, inserting them one by one", e);
+        fallbackCount.increment();
+        for (PendingWrite write : writes) {
+          write.result.complete(MessageDAO.newMessage(write.message));
+        }
+      } catch (RuntimeException e) {
+        for (PendingWrite write : writes) {
+          write.result.completeExceptionally(e);
+        }
+      }
+    }
+
+    // drain() markers complete only after everything queued ahead of them
+    for (PendingWrite write : batch) {
+      write.result.complete(Optional.empty());
+    }
+  }
+
+  // ~~ METRICS ~~
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  public long getBatchCount() {
+    return batchCount.sum();
+  }
+
+  /** Rows written by successful batches. */
+  public long getRowCount() {
+    return rowCount.sum();
+  }
+
+  /** Batches that failed and were retried row by row. */
+  public long getFallbackCount() {
+    return fallbackCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    long batches = getBatchCount();
+    return "MessageWriteBatcher{" +
+        "queued=" + getQueueDepth() +
+        ", batches=" + batches +
+        ", rows=" + getRowCount() +
+        ", avgBatchSize=" + (batches == 0 ? 0 : getRowCount() / batches) +
+        ", fallbacks=" + getFallbackCount() +
+        '}';
+  }
+
+  private static class PendingWrite {
+
+    static final PendingWrite SHUTDOWN = new PendingWrite(null);
+
+    final Message message;
+    final CompletableFuture<Optional<Message>> result = new CompletableFuture<>();
+
+    PendingWrite(Message message) {
+      this.message = message;
+    }
+  }
+}
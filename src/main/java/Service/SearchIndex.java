@@ -0,0 +1,517 @@
+package Service;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.PostingList;
+
+/**
+ * An in-memory inverted index over message_text, for GET /messages/search.
+ *
+ * Text is split into lowercase words of letters and digits. Each word maps to a PostingList of the documents that
+ * contain it, where a document is one version of a message: indexing a message again (after an update) marks its old
+ * document dead and adds a new one, so posting lists only ever grow at the end. Dead documents are skipped when
+ * searching and dropped from the posting lists once they make up half of all documents.
+ *
+ * Queries are words separated by spaces, all of which must match. Words joined by OR match if any of them does, and a
+ * word ending in * matches every word it is a prefix of: "cat dog OR bird*" is cat AND (dog OR bird...). Results are
+ * ranked most recent first, by time_posted_epoch and then message_id. A query may have MAX_QUERY_TERMS words, and its
+ * prefixes may match MAX_PREFIX_TERMS indexed words between them.
+ *
+ * The index is loaded from the database when the app starts (and again after the tables are reset), then kept
+ * current by MessageService as messages are created, updated and deleted. Writes are applied even while a load is
+ * running; the load holds the write lock while it reads the table, so they are applied after it and none are lost.
+ * Until it is loaded, searching loads it first.
+ */
+public class SearchIndex {
+
+  /**
+   * The most words a query may have, so one request can't make the index decode every posting list.
+   */
+  public static final int MAX_QUERY_TERMS = 32;
+
+  /**
+   * The most indexed words the prefixes in one query may match between them, since each is another posting list to
+   * decode.
+   */
+  public static final int MAX_PREFIX_TERMS = 128;
+
+  // Don't bother compacting small indexes
+  private static final int MIN_COMPACT_DOCS = 1024;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final TreeMap<String, PostingList> postings = new TreeMap<>();
+  // By document id: the message it is a version of, and when that was posted
+  private int[] docMessages = new int[1024];
+  private long[] docTimes = new long[1024];
+  private int docCount;
+  private final BitSet deadDocs = new BitSet();
+  private int deadCount;
+  // By message_id: its live document id + 1, or 0 if it isn't indexed
+  private int[] messageDocs = new int[1024];
+
+  private volatile boolean loaded = false;
+
+  public SearchIndex() {
+    ConnectionUtil.addResetListener(this::clear);
+  }
+
+  /**
+   * One search result.
+   */
+  public static class Hit {
+
+    private final int messageId;
+    private final long timePosted;
+
+    Hit(int messageId, long timePosted) {
+      this.messageId = messageId;
+      this.timePosted = timePosted;
+    }
+
+    public int getMessageId() {
+      return messageId;
+    }
+
+    public long getTimePosted() {
+      return timePosted;
+    }
+  }
+
+  // ~~ WRITES ~~
+
+  /**
+   * Adds a new message, or replaces what was indexed for an updated one.
+   */
+  public void index(Message message) {
+
+    lock.writeLock().lock();
+    try {
+      indexLocked(message);
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(int messageId) {
+
+    lock.writeLock().lock();
+    try {
+      killMessage(messageId);
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Reads every message into the index, unless that has been done already since the last reset.
+   * @return whether the index is loaded
+   */
+  public boolean load() {
+
+    if (loaded) {
+      return true;
+    }
+
+    lock.writeLock().lock();
+    try {
+      if (loaded) {
+        return true;
+      }
+      clearLocked();
+      MessageDAO.streamAllMessages(this::indexLocked);
+      loaded = true;
+      return true;
+
+    } catch (SQLException | IOException e) {
+      e.printStackTrace();
+      clearLocked();
+      return false;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void clear() {
+
+    lock.writeLock().lock();
+    try {
+      loaded = false;
+      clearLocked();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void clearLocked() {
+    postings.clear();
+    docMessages = new int[1024];
+    docTimes = new long[1024];
+    docCount = 0;
+    deadDocs.clear();
+    deadCount = 0;
+    messageDocs = new int[1024];
+  }
+
+  private void indexLocked(Message message) {
+
+    int messageId = message.getMessage_id();
+    killMessage(messageId);
+
+    int doc = docCount++;
+    if (doc == docMessages.length) {
+      docMessages = Arrays.copyOf(docMessages, doc * 2);
+      docTimes = Arrays.copyOf(docTimes, doc * 2);
+    }
+    docMessages[doc] = messageId;
+    docTimes[doc] = message.getTime_posted_epoch();
+
+    for (String word : tokenize(message.getMessage_text())) {
+      postings.computeIfAbsent(word, w -> new PostingList()).add(doc);
+    }
+
+    if (messageId >= messageDocs.length) {
+      messageDocs = Arrays.copyOf(messageDocs, Math.max(messageDocs.length * 2, messageId + 1));
+    }
+    messageDocs[messageId] = doc + 1;
+  }
+
+  private void killMessage(int messageId) {
+
+    if (messageId >= 0 && messageId < messageDocs.length && messageDocs[messageId] != 0) {
+      deadDocs.set(messageDocs[messageId] - 1);
+      deadCount++;
+      messageDocs[messageId] = 0;
+    }
+  }
+
+  // Once half the documents are dead, renumber the live ones from 0 (keeping their order, so the posting lists stay
+  // sorted) and rewrite every posting list without the dead ones. Each compaction is paid for by the writes that
+  // killed those documents.
+  private void compactIfNeeded() {
+
+    if (docCount < MIN_COMPACT_DOCS || deadCount * 2 < docCount) {
+      return;
+    }
+
+    int[] renumbered = new int[docCount];
+    int live = 0;
+    for (int doc = 0; doc < docCount; doc++) {
+      if (!deadDocs.get(doc)) {
+        renumbered[doc] = live;
+        docMessages[live] = docMessages[doc];
+        docTimes[live] = docTimes[doc];
+        messageDocs[docMessages[live]] = live + 1;
+        live++;
+      }
+    }
+
+    postings.values().removeIf(list -> {
+      list.rewrite(doc -> !deadDocs.get(doc), doc -> renumbered[doc]);
+      return list.size() == 0;
+    });
+
+    int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, live)) * 2);
+    docMessages = Arrays.copyOf(docMessages, capacity);
+    docTimes = Arrays.copyOf(docTimes, capacity);
+    docCount = live;
+    deadDocs.clear();
+    deadCount = 0;
+  }
+
+  // ~~ SEARCH ~~
+
+  /**
+   * @param query      see the class comment
+   * @param afterTime  with afterId, the last hit of the previous page: only hits ranked after it are returned. Use
+   *                   Long.MAX_VALUE and Integer.MAX_VALUE for the first page.
+   * @param limit      the most hits to return
+   * @return the matching messages, most recent first. Empty if the index couldn't be loaded.
+   * @throws IllegalArgumentException if the query has more than MAX_QUERY_TERMS words, or its prefixes match more than
+   *                                  MAX_PREFIX_TERMS words
+   */
+  public List<Hit> search(String query, long afterTime, int afterId, int limit) {
+
+    List<List<String>> groups = parse(query);
+
+    if (!loaded && !load()) {
+      return new ArrayList<>();
+    }
+
+    lock.readLock().lock();
+    try {
+      int[] docs = match(expand(groups));
+
+      // Keep the best limit hits in a heap with the worst of them on top
+      PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, (a, b) -> -compareRank(a, b));
+      for (int doc : docs) {
+        if (deadDocs.get(doc) || !isAfter(doc, afterTime, afterId)) {
+          continue;
+        }
+        best.add(doc);
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+
+      Hit[] hits = new Hit[best.size()];
+      for (int i = hits.length - 1; i >= 0; i--) {
+        int doc = best.poll();
+        hits[i] = new Hit(docMessages[doc], docTimes[doc]);
+      }
+      return Arrays.asList(hits);
+
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Most recent first: later time_posted_epoch, then higher message_id
+  private int compareRank(int docA, int docB) {
+
+    int byTime = Long.compare(docTimes[docB], docTimes[docA]);
+    return byTime != 0 ? byTime : Integer.compare(docMessages[docB], docMessages[docA]);
+  }
+
+  private boolean isAfter(int doc, long afterTime, int afterId) {
+    return docTimes[doc] < afterTime || (docTimes[doc] == afterTime && docMessages[doc] < afterId);
+  }
+
+  // Each group's posting lists, with prefixes expanded to every indexed word they match
+  private List<List<PostingList>> expand(List<List<String>> groups) {
+
+    List<List<PostingList>> expanded = new ArrayList<>(groups.size());
+    int prefixTerms = 0;
+    for (List<String> group : groups) {
+      List<PostingList> lists = new ArrayList<>();
+      for (String word : group) {
+        if (word.endsWith("*")) {
+          String prefix = word.substring(0, word.length() - 1);
+          for (PostingList list : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            if (++prefixTerms > MAX_PREFIX_TERMS) {
+              throw new IllegalArgumentException("The prefixes in a search can match at most " + MAX_PREFIX_TERMS
+                  + " words");
+            }
+            lists.add(list);
+          }
+        } else {
+          PostingList list = postings.get(word);
+          if (list != null) {
+            lists.add(list);
+          }
+        }
+      }
+      expanded.add(lists);
+    }
+    return expanded;
+  }
+
+  // Documents matching every group, in increasing order. Dead ones are included.
+  private int[] match(List<List<PostingList>> groups) {
+
+    if (groups.isEmpty()) {
+      return new int[0];
+    }
+
+    List<int[]> matches = new ArrayList<>(groups.size());
+    for (List<PostingList> group : groups) {
+      int[] docs = matchAny(group);
+      if (docs.length == 0) {
+        return docs;
+      }
+      matches.add(docs);
+    }
+
+    // Smallest first, so every intersection is at most as big as it
+    matches.sort((a, b) -> Integer.compare(a.length, b.length));
+    int[] result = matches.get(0);
+    for (int i = 1; i < matches.size() && result.length > 0; i++) {
+      result = intersect(result, matches.get(i));
+    }
+    return result;
+  }
+
+  // Documents matching any of the posting lists in a group
+  private int[] matchAny(List<PostingList> lists) {
+
+    if (lists.size() == 1) {
+      return lists.get(0).toArray();
+    }
+
+    int total = 0;
+    for (PostingList list : lists) {
+      total += list.size();
+    }
+    int[] docs = new int[total];
+    int position = 0;
+    for (PostingList list : lists) {
+      int[] values = list.toArray();
+      System.arraycopy(values, 0, docs, position, values.length);
+      position += values.length;
+    }
+    Arrays.sort(docs);
+
+    // Remove duplicates
+    int unique = 0;
+    for (int i = 0; i < docs.length; i++) {
+      if (i == 0 || docs[i] != docs[i - 1]) {
+        docs[unique++] = docs[i];
+      }
+    }
+    return Arrays.copyOf(docs, unique);
+  }
+
+  private static int[] intersect(int[] a, int[] b) {
+
+    int[] result = new int[Math.min(a.length, b.length)];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[count++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  // ~~ TEXT ~~
+
+  /**
+   * @return the distinct words in text, lowercased, in the order they first appear
+   */
+  static Set<String> tokenize(String text) {
+
+    Set<String> words = new LinkedHashSet<>();
+    if (text == null) {
+      return words;
+    }
+
+    String lower = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        words.add(lower.substring(start, i));
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  // The query as a list of groups that must all match, each a list of words (or prefixes, ending in *) of which any
+  // may match. A query word that tokenizes into several words (e.g. "e-mail") needs all of them.
+  private static List<List<String>> parse(String query) {
+
+    List<List<String>> groups = new ArrayList<>();
+    String[] parts = query.trim().split("\\s+");
+    int terms = 0;
+    boolean or = false;
+
+    for (String part : parts) {
+      if (part.equals("OR")) {
+        or = !groups.isEmpty();
+        continue;
+      }
+      if (part.equals("AND")) {
+        continue;
+      }
+
+      boolean prefix = part.endsWith("*");
+      List<String> words = new ArrayList<>(tokenize(part));
+      if (words.isEmpty()) {
+        continue;
+      }
+      if (prefix) {
+        words.set(words.size() - 1, words.get(words.size() - 1) + "*");
+      }
+
+      terms += words.size();
+      if (terms > MAX_QUERY_TERMS) {
+        throw new IllegalArgumentException("A search can have at most " + MAX_QUERY_TERMS + " words");
+      }
+
+      if (or && words.size() == 1) {
+        groups.get(groups.size() - 1).add(words.get(0));
+      } else {
+        for (String word : words) {
+          List<String> group = new ArrayList<>();
+          group.add(word);
+          groups.add(group);
+        }
+      }
+      or = false;
+    }
+    return groups;
+  }
+
+  // ~~ STATS ~~
+
+  /**
+   * @return how many messages are indexed
+   */
+  public int getDocumentCount() {
+
+    lock.readLock().lock();
+    try {
+      return docCount - deadCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return how many distinct words are indexed
+   */
+  public int getTermCount() {
+
+    lock.readLock().lock();
+    try {
+      return postings.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the compressed size of every posting list, in bytes
+   */
+  public long getPostingBytes() {
+
+    lock.readLock().lock();
+    try {
+      long bytes = 0;
+      for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+        bytes += entry.getValue().byteSize();
+      }
+      return bytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package Service;
+
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.IntLruCache;
+
+/**
+ * Each account's messages, kept in memory in message_id order so profile reads don't have to go to the database.
+ *
+ * An account's timeline is loaded the first time it is read and then kept up to date by MessageService as messages
+ * are created, updated and deleted. The least recently read accounts are evicted once maxAccounts timelines are
+ * cached. Accounts with more than maxMessagesPerAccount messages are not cached at all; reads for them keep going to
+ * the database.
+ *
+ * Timelines are immutable lists that are replaced on every change, so readers never need a lock. A new message, which
+ * nearly always has the highest message_id yet, goes into spare room at the end of the array the timeline shares with
+ * the one it replaces, so posting costs O(1) amortized rather than a copy of the account's whole timeline. Edits,
+ * deletes and out-of-order inserts copy it. Every change is keyed by message_id and idempotent, which keeps a timeline
+ * correct however a lazy load interleaves with concurrent writes.
+ */
+public class TimelineCache {
+
+  // Cached in place of a timeline to remember that an account is too big to cache.
+  private static final List<Message> TOO_LARGE = Collections.unmodifiableList(new ArrayList<>());
+
+  private final IntLruCache<List<Message>> timelines;
+  private final int maxMessagesPerAccount;
+
+  public TimelineCache(int maxAccounts, int maxMessagesPerAccount) {
+    this.timelines = new IntLruCache<>(maxAccounts, 0);
+    this.maxMessagesPerAccount = maxMessagesPerAccount;
+
+    ConnectionUtil.addResetListener(timelines::clear);
+  }
+
+  /**
+   * @return the account's messages in message_id order, or null if the account has too many messages to cache
+   */
+  public List<Message> get(int accountId) {
+
+    List<Message> timeline = timelines.get(accountId);
+    if (timeline == null) {
+      timeline = load(accountId);
+    }
+
+    return timeline == TOO_LARGE ? null : timeline;
+  }
+
+  /**
+   * Like get(), but never goes to the database. Only a cached timeline counts towards the cache's hits; otherwise
+   * nothing is counted, since the caller will fall back to get(), which counts it.
+   * @return the account's messages, or null if they aren't cached (or the account has too many to cache)
+   */
+  public List<Message> getIfCached(int accountId) {
+
+    List<Message> timeline = timelines.peek(accountId);
+    if (timeline == null || timeline == TOO_LARGE) {
+      return null;
+    }
+    // Counts the hit and marks the timeline recently used. Null if it was evicted in between.
+    timeline = timelines.get(accountId);
+    return timeline == TOO_LARGE ? null : timeline;
+  }
+
+  private List<Message> load(int accountId) {
+
+    long stamp = timelines.stamp(accountId);
+
+    // Reading one row past the limit tells us the account is too big without reading all of it.
+    List<Message> messages;
+    try {
+      messages = MessageDAO.getMessagesByUserIdAfter(accountId, 0, maxMessagesPerAccount + 1);
+    } catch (SQLException e) {
+      e.printStackTrace();
+      // Same answer as the DAO gives on errors, but don't cache it.
+      return Collections.emptyList();
+    }
+    List<Message> timeline = messages.size() > maxMessagesPerAccount ? TOO_LARGE
+        : new Timeline(messages.toArray(new Message[0]), messages.size());
+
+    timelines.putIfUnchanged(accountId, timeline, stamp);
+    return timeline;
+  }
+
+  public void onInsert(Message message) {
+    timelines.computeIfPresent(message.getPosted_by(), timeline -> upsert(timeline, message));
+  }
+
+  public void onUpdate(Message message) {
+    timelines.computeIfPresent(message.getPosted_by(), timeline -> upsert(timeline, message));
+  }
+
+  public void onDelete(Message message) {
+    timelines.computeIfPresent(message.getPosted_by(), timeline -> remove(timeline, message.getMessage_id()));
+  }
+
+  /**
+   * Drops the account's timeline so the next read reloads it, for changes too big to apply one message at a time.
+   */
+  public void invalidate(int accountId) {
+    timelines.remove(accountId);
+  }
+
+  public void clear() {
+    timelines.clear();
+  }
+
+  public IntLruCache<List<Message>> getCache() {
+    return timelines;
+  }
+
+  /**
+   * Binary search by message_id.
+   * @return the index of the message, or (-(insertion point) - 1) if it isn't there, like Arrays.binarySearch
+   */
+  static int indexOf(List<Message> timeline, int messageId) {
+
+    int low = 0;
+    int high = timeline.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midId = timeline.get(mid).getMessage_id();
+      if (midId < messageId) {
+        low = mid + 1;
+      } else if (midId > messageId) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  // Insert or replace by message_id. New messages almost always go on the end.
+  private List<Message> upsert(List<Message> cached, Message message) {
+
+    if (cached == TOO_LARGE) {
+      return cached;
+    }
+    Timeline timeline = (Timeline) cached;
+
+    int index = indexOf(timeline, message.getMessage_id());
+    if (index >= 0) {
+      Message[] updated = timeline.toArray(new Message[0]);
+      updated[index] = message;
+      return new Timeline(updated, updated.length);
+    }
+    if (timeline.size() >= maxMessagesPerAccount) {
+      return TOO_LARGE;
+    }
+    int insert = -index - 1;
+    if (insert == timeline.size()) {
+      return timeline.append(message);
+    }
+
+    Message[] updated = new Message[timeline.size() + 1];
+    System.arraycopy(timeline.messages, 0, updated, 0, insert);
+    updated[insert] = message;
+    System.arraycopy(timeline.messages, insert, updated, insert + 1, timeline.size() - insert);
+    return new Timeline(updated, updated.length);
+  }
+
+  private List<Message> remove(List<Message> cached, int messageId) {
+
+    if (cached == TOO_LARGE) {
+      return cached;
+    }
+    Timeline timeline = (Timeline) cached;
+
+    int index = indexOf(timeline, messageId);
+    if (index < 0) {
+      return timeline;
+    }
+
+    Message[] updated = new Message[timeline.size() - 1];
+    System.arraycopy(timeline.messages, 0, updated, 0, index);
+    System.arraycopy(timeline.messages, index + 1, updated, index, updated.length - index);
+    return new Timeline(updated, updated.length);
+  }
+
+  /**
+   * The first size messages of an array that later timelines may share. Only the timeline that is cached gets
+   * appended to (always under its cache segment's lock), and appending only writes past its own size, so no timeline
+   * ever sees its contents change.
+   */
+  private static final class Timeline extends AbstractList<Message> implements RandomAccess {
+
+    private final Message[] messages;
+    private final int size;
+
+    Timeline(Message[] messages, int size) {
+      this.messages = messages;
+      this.size = size;
+    }
+
+    @Override
+    public Message get(int index) {
+      Objects.checkIndex(index, size);
+      return messages[index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    // This timeline plus message at the end, sharing the array while there is room in it
+    Timeline append(Message message) {
+      // (A slot that is already taken means something else was appended to this timeline; don't write over it)
+      Message[] target = size < messages.length && messages[size] == null
+          ? messages
+          : Arrays.copyOf(messages, Math.max(16, size * 2));
+      target[size] = message;
+      return new Timeline(target, size + 1);
+    }
+  }
+}
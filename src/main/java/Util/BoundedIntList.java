@@ -0,0 +1,136 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * The largest capacity ints added so far, kept sorted, for "newest N ids" lists such as home timelines.
+ *
+ * Once the list is full, adding a value drops the smallest one, and isTruncated() reports that something has been
+ * dropped, so callers know that values below the smallest one kept may be missing. Values are stored in one int array
+ * with spare room after the end. New values are nearly always the largest yet and go on the end, so add() is O(1)
+ * amortized: when the end is reached the live values are slid back to the front, or the array grows if it has little
+ * spare room. before() binary searches and copies out only the values it returns.
+ *
+ * Thread-safe: every method is synchronized.
+ */
+public class BoundedIntList {
+
+  // Spare room kept after the values once the list is full, so sliding them back happens once per SLACK adds
+  private static final int SLACK = 32;
+
+  private final int capacity;
+  private int[] values;
+  // The values are values[start] to values[start + size - 1], in increasing order
+  private int start;
+  private int size;
+  private boolean truncated;
+
+  /**
+   * @throws IllegalArgumentException if capacity isn't positive
+   */
+  public BoundedIntList(int capacity) {
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException("BoundedIntList capacity must be positive, got " + capacity);
+    }
+    this.capacity = capacity;
+    this.values = new int[Math.min(capacity, 16)];
+  }
+
+  /**
+   * @param sorted    initial values in increasing order, without duplicates. Only the largest capacity are kept.
+   * @param truncated whether values smaller than these may be missing
+   */
+  public BoundedIntList(int capacity, int[] sorted, boolean truncated) {
+
+    this(capacity);
+    int from = Math.max(0, sorted.length - capacity);
+    this.values = Arrays.copyOfRange(sorted, from, sorted.length + Math.min(SLACK, capacity));
+    this.size = sorted.length - from;
+    this.truncated = truncated || from > 0;
+  }
+
+  /**
+   * Adds value unless it is already there. If the list is full, the smallest value is dropped to make room, or value
+   * itself is if it would be the smallest.
+   */
+  public synchronized void add(int value) {
+
+    int index = indexOf(value);
+    if (index >= 0) {
+      return;
+    }
+    int insert = -index - 1;
+
+    if (size == capacity) {
+      truncated = true;
+      if (insert == 0) {
+        return;
+      }
+      start++;
+      size--;
+      insert--;
+    }
+
+    if (start + size == values.length) {
+      int[] target = values.length - size >= Math.min(SLACK, capacity)
+          ? values
+          : new int[Math.min(values.length * 2, capacity + SLACK)];
+      System.arraycopy(values, start, target, 0, size);
+      values = target;
+      start = 0;
+    }
+
+    int position = start + insert;
+    System.arraycopy(values, position, values, position + 1, size - insert);
+    values[position] = value;
+    size++;
+  }
+
+  /**
+   * @return whether value was there
+   */
+  public synchronized boolean remove(int value) {
+
+    int index = indexOf(value);
+    if (index < 0) {
+      return false;
+    }
+    int position = start + index;
+    System.arraycopy(values, position + 1, values, position, size - index - 1);
+    size--;
+    return true;
+  }
+
+  /**
+   * @return up to max of the values smaller than bound, largest first
+   */
+  public synchronized int[] before(int bound, int max) {
+
+    int index = indexOf(bound);
+    int end = index >= 0 ? index : -index - 1;
+    int[] result = new int[Math.min(max, end)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = values[start + end - 1 - i];
+    }
+    return result;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return true if values have been dropped (or were missing from the start), so values smaller than the smallest
+   *         one kept may be missing
+   */
+  public synchronized boolean isTruncated() {
+    return truncated;
+  }
+
+  // Binary search, relative to start. Like Arrays.binarySearch: the index, or (-(insertion point) - 1).
+  private int indexOf(int value) {
+    int index = Arrays.binarySearch(values, start, start + size, value);
+    return index >= 0 ? index - start : index + start;
+  }
+}
@@ -0,0 +1,682 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small, bounded JDBC connection pool.
+ *
+ * Connections handed out by {@link #getConnection()} are proxies: calling close() on them returns the physical
+ * connection to the pool instead of closing it, so callers should always use them in a try-with-resources block.
+ * Any statements the borrower forgot to close are closed when the connection is returned.
+ *
+ * - The number of connections that can be borrowed at once is capped at maxSize. Callers wait up to
+ *   acquireTimeoutMillis for a free connection, after which an SQLTransientConnectionException is thrown.
+ * - Idle connections are validated before being handed out if they haven't been used recently.
+ * - A background housekeeper closes connections that have been idle for longer than idleTimeoutMillis (keeping at
+ *   least minIdle of them) and logs a warning for connections held longer than leakThresholdMillis. Borrowing only
+ *   records the thread and the time; the warning carries the borrowing thread's stack as it is when the leak is
+ *   noticed, so the hot path never walks the stack.
+ * - Each connection keeps up to statementCacheSize prepared statements open between borrows, keyed by their SQL.
+ *   prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) hand out a cached statement when there is one,
+ *   and closing it puts it back: its result sets are closed and its parameters cleared, but the statement stays
+ *   prepared for the next borrower. The least recently used statements are closed for real once the cache is full.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+  /**
+   * Connections used within this window are assumed to still be alive and aren't re-validated on borrow.
+   */
+  private static final long VALIDATION_BYPASS_MILLIS = 500;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+  private final String url;
+  private final String username;
+  private final String password;
+
+  private final int maxSize;
+  private final int minIdle;
+  private final long acquireTimeoutMillis;
+  private final long idleTimeoutMillis;
+  private final long leakThresholdMillis;
+  private final int statementCacheSize;
+
+  // One permit per connection that may be borrowed. Fair, so waiting threads are served in arrival order.
+  private final Semaphore permits;
+  // Most recently returned connections are at the head, so the tail holds the ones idle the longest.
+  private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+  private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService housekeeper;
+
+  // ~~ METRICS ~~
+  private final AtomicInteger awaiting = new AtomicInteger();
+  private final LongAdder acquireCount = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final LongAdder timeoutCount = new LongAdder();
+  private final LongAdder leakCount = new LongAdder();
+  private final LongAdder createdCount = new LongAdder();
+  private final LongAdder closedCount = new LongAdder();
+  private final AtomicInteger cachedStatements = new AtomicInteger();
+  private final LongAdder statementCacheHits = new LongAdder();
+  private final LongAdder statementCacheMisses = new LongAdder();
+  private final AtomicInteger openResultSets = new AtomicInteger();
+
+  private volatile boolean shutdown = false;
+
+  public ConnectionPool(String url, String username, String password, int maxSize, int minIdle,
+      long acquireTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis, int statementCacheSize) {
+
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1, was " + maxSize);
+    }
+
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.maxSize = maxSize;
+    this.minIdle = Math.min(Math.max(minIdle, 0), maxSize);
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.leakThresholdMillis = leakThresholdMillis;
+    this.statementCacheSize = Math.max(statementCacheSize, 0);
+    this.permits = new Semaphore(maxSize, true);
+
+    this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+    housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Borrows a connection, waiting up to acquireTimeoutMillis if all of them are in use. The returned connection
+   * must be closed to give it back to the pool.
+   */
+  public Connection getConnection() throws SQLException {
+
+    if (shutdown) {
+      throw new SQLException("Connection pool has been shut down");
+    }
+
+    long start = System.nanoTime();
+    awaiting.incrementAndGet();
+    try {
+      if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        timeoutCount.increment();
+        throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+            + "ms waiting for a connection (active=" + borrowed.size() + ", max=" + maxSize + ")");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+    } finally {
+      awaiting.decrementAndGet();
+    }
+
+    try {
+      PooledConnection pooled;
+      while ((pooled = idle.pollFirst()) != null && !isUsable(pooled)) {
+        discard(pooled);
+      }
+      if (pooled == null) {
+        pooled = open();
+      }
+
+      pooled.borrowedAt = System.currentTimeMillis();
+      pooled.borrowedBy = Thread.currentThread();
+      pooled.leakReported = false;
+      borrowed.add(pooled);
+
+      recordWait(System.nanoTime() - start);
+      return pooled.newHandle();
+
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private void recordWait(long nanos) {
+    acquireCount.increment();
+    totalWaitNanos.add(nanos);
+    maxWaitNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  private PooledConnection open() throws SQLException {
+    Connection physical = DriverManager.getConnection(url, username, password);
+    createdCount.increment();
+    return new PooledConnection(physical);
+  }
+
+  private boolean isUsable(PooledConnection pooled) {
+    try {
+      if (System.currentTimeMillis() - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+        return !pooled.physical.isClosed();
+      }
+      return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void discard(PooledConnection pooled) {
+    // Closing the connection closes its statements
+    cachedStatements.addAndGet(-pooled.statementCache.size());
+    pooled.statementCache.clear();
+    try {
+      pooled.physical.close();
+    } catch (SQLException e) {
+      log.debug("Error closing pooled connection", e);
+    }
+    closedCount.increment();
+  }
+
+  /**
+   * Called when a borrower closes its handle. Cleans the connection up and makes it available again.
+   */
+  private void release(PooledConnection pooled) {
+
+    boolean healthy = true;
+    try {
+      pooled.closeOpenStatements();
+      if (!pooled.physical.getAutoCommit()) {
+        pooled.physical.rollback();
+        pooled.physical.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      healthy = false;
+    }
+
+    borrowed.remove(pooled);
+    pooled.borrowedBy = null;
+    pooled.lastReturnedAt = System.currentTimeMillis();
+
+    if (healthy && !shutdown) {
+      idle.offerFirst(pooled);
+    } else {
+      discard(pooled);
+    }
+    permits.release();
+  }
+
+  private void housekeep() {
+    try {
+      long now = System.currentTimeMillis();
+
+      // Evict connections that have sat idle for too long, oldest first.
+      PooledConnection oldest;
+      while (idle.size() > minIdle && (oldest = idle.peekLast()) != null
+          && now - oldest.lastReturnedAt > idleTimeoutMillis) {
+        if (idle.removeLastOccurrence(oldest)) {
+          discard(oldest);
+        }
+      }
+
+      // Report connections that have been borrowed for suspiciously long.
+      if (leakThresholdMillis > 0) {
+        for (PooledConnection pooled : borrowed) {
+          Thread borrowedBy = pooled.borrowedBy;
+          if (!pooled.leakReported && borrowedBy != null && now - pooled.borrowedAt > leakThresholdMillis) {
+            pooled.leakReported = true;
+            leakCount.increment();
+            // Where the borrower is now, which is usually still inside whatever is holding the connection
+            Throwable where = new Throwable("Borrowing thread " + borrowedBy.getName() + " is here");
+            where.setStackTrace(borrowedBy.getStackTrace());
+            log.warn("Possible connection leak: connection held for " + (now - pooled.borrowedAt) + "ms", where);
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Connection pool housekeeping failed", e);
+    }
+  }
+
+  /**
+   * Closes all idle connections and stops handing out new ones. Borrowed connections are closed as they come back.
+   */
+  @Override
+  public void close() {
+    shutdown = true;
+    housekeeper.shutdownNow();
+    PooledConnection pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      discard(pooled);
+    }
+  }
+
+  // ~~ GAUGES AND COUNTERS ~~
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Connections currently borrowed. */
+  public int getActiveConnections() {
+    return borrowed.size();
+  }
+
+  /** Connections open and sitting in the pool. */
+  public int getIdleConnections() {
+    return idle.size();
+  }
+
+  public int getTotalConnections() {
+    return getActiveConnections() + getIdleConnections();
+  }
+
+  /** Threads currently blocked waiting for a connection. */
+  public int getThreadsAwaiting() {
+    return awaiting.get();
+  }
+
+  /** Successful borrows since the pool was created. */
+  public long getAcquireCount() {
+    return acquireCount.sum();
+  }
+
+  /** Total time spent waiting for successful borrows, in nanoseconds. */
+  public long getTotalWaitNanos() {
+    return totalWaitNanos.sum();
+  }
+
+  public long getMaxWaitNanos() {
+    return maxWaitNanos.get();
+  }
+
+  public long getTimeoutCount() {
+    return timeoutCount.sum();
+  }
+
+  public long getLeakCount() {
+    return leakCount.sum();
+  }
+
+  public long getCreatedCount() {
+    return createdCount.sum();
+  }
+
+  public long getClosedCount() {
+    return closedCount.sum();
+  }
+
+  /** Prepared statements held open in the statement caches, whether borrowed right now or not. */
+  public int getCachedStatements() {
+    return cachedStatements.get();
+  }
+
+  /**
+   * Statements open right now: every cached statement, plus uncached ones that borrowers haven't closed yet.
+   */
+  public int getOpenStatements() {
+    int open = getCachedStatements();
+    for (PooledConnection pooled : borrowed) {
+      open += pooled.countOpenUncachedStatements();
+    }
+    return open;
+  }
+
+  /**
+   * Result sets from cached statements that are still open. A result set counts until it is closed, its statement is
+   * re-executed or its statement is given back.
+   */
+  public int getOpenResultSets() {
+    return openResultSets.get();
+  }
+
+  public long getStatementCacheHits() {
+    return statementCacheHits.sum();
+  }
+
+  public long getStatementCacheMisses() {
+    return statementCacheMisses.sum();
+  }
+
+  @Override
+  public String toString() {
+    long acquires = getAcquireCount();
+    return "ConnectionPool{" +
+        "active=" + getActiveConnections() +
+        ", idle=" + getIdleConnections() +
+        ", max=" + maxSize +
+        ", awaiting=" + getThreadsAwaiting() +
+        ", acquires=" + acquires +
+        ", avgWaitMicros=" + (acquires == 0 ? 0 : getTotalWaitNanos() / acquires / 1000) +
+        ", maxWaitMicros=" + getMaxWaitNanos() / 1000 +
+        ", timeouts=" + getTimeoutCount() +
+        ", leaks=" + getLeakCount() +
+        ", openStatements=" + getOpenStatements() +
+        ", openResultSets=" + getOpenResultSets() +
+        ", statementCacheHits=" + getStatementCacheHits() +
+        ", statementCacheMisses=" + getStatementCacheMisses() +
+        '}';
+  }
+
+  /**
+   * A physical connection plus the bookkeeping the pool needs for it.
+   */
+  private class PooledConnection {
+
+    final Connection physical;
+    final List<Statement> openStatements = new ArrayList<>();
+    // Least recently used first. Only touched by whoever has the connection borrowed (or the pool, once it's idle).
+    final LinkedHashMap<String, CachedStatement> statementCache = new LinkedHashMap<>(16, 0.75f, true);
+    volatile long borrowedAt;
+    volatile long lastReturnedAt = System.currentTimeMillis();
+    volatile Thread borrowedBy;
+    volatile boolean leakReported;
+
+    PooledConnection(Connection physical) {
+      this.physical = physical;
+    }
+
+    Connection newHandle() {
+      return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+          new Class<?>[] { Connection.class }, new Handle(this));
+    }
+
+    void track(Statement statement) {
+      synchronized (openStatements) {
+        openStatements.add(statement);
+      }
+    }
+
+    /**
+     * @return a cached statement for sql if one is free, preparing and caching it if need be, or null if sql's
+     *         statement is already out (the caller then prepares an uncached one)
+     */
+    CachedStatement checkOut(String sql, int autoGeneratedKeys) throws SQLException {
+
+      String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+      CachedStatement cached = statementCache.get(key);
+      if (cached != null) {
+        if (cached.inUse) {
+          return null;
+        }
+        statementCacheHits.increment();
+      } else {
+        statementCacheMisses.increment();
+        cached = new CachedStatement(this, physical.prepareStatement(sql, autoGeneratedKeys));
+        statementCache.put(key, cached);
+        cachedStatements.incrementAndGet();
+        evictStatements();
+      }
+      cached.inUse = true;
+      return cached;
+    }
+
+    private void evictStatements() {
+      Iterator<CachedStatement> statements = statementCache.values().iterator();
+      while (statementCache.size() > statementCacheSize && statements.hasNext()) {
+        CachedStatement eldest = statements.next();
+        if (!eldest.inUse) {
+          statements.remove();
+          cachedStatements.decrementAndGet();
+          eldest.closeQuietly();
+        }
+      }
+    }
+
+    void uncache(CachedStatement cached) {
+      if (statementCache.values().remove(cached)) {
+        cachedStatements.decrementAndGet();
+      }
+    }
+
+    int countOpenUncachedStatements() {
+      int open = 0;
+      synchronized (openStatements) {
+        for (Statement statement : openStatements) {
+          try {
+            if (!Proxy.isProxyClass(statement.getClass()) && !statement.isClosed()) {
+              open++;
+            }
+          } catch (SQLException e) {
+            // Count it as closed
+          }
+        }
+      }
+      return open;
+    }
+
+    void closeOpenStatements() throws SQLException {
+      synchronized (openStatements) {
+        Iterator<Statement> statements = openStatements.iterator();
+        while (statements.hasNext()) {
+          Statement statement = statements.next();
+          if (!statement.isClosed()) {
+            statement.close();
+          }
+          statements.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * The Connection given to borrowers. Each borrow gets its own handle, so closing a handle twice (or using it after
+   * closing) can't affect whoever borrows the same physical connection next.
+   */
+  private class Handle implements InvocationHandler {
+
+    private final PooledConnection pooled;
+    private boolean closed = false;
+
+    Handle(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+      switch (method.getName()) {
+        case "close":
+          synchronized (this) {
+            if (!closed) {
+              closed = true;
+              release(pooled);
+            }
+          }
+          return null;
+        case "isClosed":
+          return closed || pooled.physical.isClosed();
+        case "unwrap":
+        case "isWrapperFor":
+          break;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled(" + pooled.physical + ")";
+        default:
+          if (closed) {
+            throw new SQLException("Connection has already been returned to the pool");
+          }
+      }
+
+      if (statementCacheSize > 0 && method.getName().equals("prepareStatement")
+          && (args.length == 1 || method.getParameterTypes()[1] == int.class && args.length == 2)) {
+        int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+        CachedStatement cached = pooled.checkOut((String) args[0], autoGeneratedKeys);
+        if (cached != null) {
+          PreparedStatement lease = cached.lease((Connection) proxy);
+          pooled.track(lease);
+          return lease;
+        }
+      }
+
+      try {
+        Object result = method.invoke(pooled.physical, args);
+        if (result instanceof Statement) {
+          pooled.track((Statement) result);
+        }
+        return result;
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /**
+   * A prepared statement kept open in a connection's statement cache. It is lent out to one borrower at a time,
+   * wrapped in a Lease, and comes back to the cache when the lease is closed.
+   */
+  private class CachedStatement {
+
+    final PooledConnection owner;
+    final PreparedStatement physical;
+    final List<ResultSet> resultSets = new ArrayList<>(2);
+    boolean inUse;
+    boolean fetchSizeChanged;
+
+    CachedStatement(PooledConnection owner, PreparedStatement physical) {
+      this.owner = owner;
+      this.physical = physical;
+    }
+
+    PreparedStatement lease(Connection connection) {
+      return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, new Lease(this, connection));
+    }
+
+    void opened(ResultSet resultSet) throws SQLException {
+      // Results that were closed, or replaced by re-executing the statement, stop counting as open.
+      Iterator<ResultSet> open = resultSets.iterator();
+      while (open.hasNext()) {
+        if (open.next().isClosed()) {
+          open.remove();
+          openResultSets.decrementAndGet();
+        }
+      }
+      resultSets.add(resultSet);
+      openResultSets.incrementAndGet();
+    }
+
+    /**
+     * Resets the statement for its next user.
+     * @return false if that failed and the statement should be thrown away instead
+     */
+    boolean giveBack() {
+      try {
+        for (ResultSet resultSet : resultSets) {
+          resultSet.close();
+        }
+        physical.clearParameters();
+        physical.clearBatch();
+        if (fetchSizeChanged) {
+          physical.setFetchSize(0);
+          fetchSizeChanged = false;
+        }
+        return true;
+      } catch (SQLException e) {
+        return false;
+      } finally {
+        openResultSets.addAndGet(-resultSets.size());
+        resultSets.clear();
+        inUse = false;
+      }
+    }
+
+    void closeQuietly() {
+      try {
+        physical.close();
+      } catch (SQLException e) {
+        log.debug("Error closing cached statement", e);
+      }
+    }
+  }
+
+  /**
+   * The PreparedStatement a borrower gets from the statement cache. Like Handle, each checkout gets its own lease,
+   * so a statement closed (given back) twice can't disturb its next user.
+   */
+  private class Lease implements InvocationHandler {
+
+    private final CachedStatement cached;
+    private final Connection connection;
+    private boolean closed = false;
+
+    Lease(CachedStatement cached, Connection connection) {
+      this.cached = cached;
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+      switch (method.getName()) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            if (!cached.giveBack()) {
+              cached.owner.uncache(cached);
+              cached.closeQuietly();
+            }
+          }
+          return null;
+        case "isClosed":
+          return closed || cached.physical.isClosed();
+        case "getConnection":
+          return connection;
+        case "unwrap":
+        case "isWrapperFor":
+          break;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Cached(" + cached.physical + ")";
+        default:
+          if (closed) {
+            throw new SQLException("Statement has already been closed");
+          }
+          if (method.getName().equals("setFetchSize")) {
+            cached.fetchSizeChanged = true;
+          }
+      }
+
+      try {
+        Object result = method.invoke(cached.physical, args);
+        if (result instanceof ResultSet) {
+          cached.opened((ResultSet) result);
+        }
+        return result;
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
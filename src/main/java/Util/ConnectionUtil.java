@@ -5,14 +5,18 @@ import org.h2.tools.RunScript;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * The ConnectionUtil class will be utilized to create an active connection to our database. This class utilizes the singleton design pattern.
+ * The ConnectionUtil class will be utilized to create active connections to our database. Connections come from a
+ * single, lazily created {@link ConnectionPool}, so every request thread gets its own connection instead of sharing
+ * one session.
  * We will be utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections returned by getConnection() MUST be closed (ideally with try-with-resources) - closing one hands it
+ * back to the pool.
  */
 public class ConnectionUtil {
 
@@ -29,43 +33,140 @@ public class ConnectionUtil {
      */
     private static String password = "sa";
     /**
-     * a static object which represents the connection to h2. Because it is static, any DAO interacting
-     * with this connection object is referring to the same object.
+     * The most connections that may be borrowed at once. Defaults to two per core.
      */
-    private static Connection connection = null;
+    private static int maxPoolSize = Integer.getInteger("socialmedia.pool.maxSize",
+            Runtime.getRuntime().availableProcessors() * 2);
     /**
-     * @return an active connection to the database and set up the database tables if this is the first time the
-     * Connection has been established
+     * Idle connections the pool keeps open even when they haven't been used for a while.
      */
-    public static Connection getConnection(){
-        if(connection == null){
-            try {
-                connection = DriverManager.getConnection(url, username, password);
-                resetTestDatabase();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    private static int minIdle = Integer.getInteger("socialmedia.pool.minIdle", 2);
+    /**
+     * How long a caller waits for a free connection before giving up.
+     */
+    private static long acquireTimeoutMillis = Long.getLong("socialmedia.pool.acquireTimeoutMillis", 5_000);
+    /**
+     * How long a connection may sit unused in the pool before it is closed.
+     */
+    private static long idleTimeoutMillis = Long.getLong("socialmedia.pool.idleTimeoutMillis", 600_000);
+    /**
+     * How long a connection may be borrowed before a possible leak is logged. 0 disables leak detection.
+     */
+    private static long leakThresholdMillis = Long.getLong("socialmedia.pool.leakThresholdMillis", 30_000);
+    /**
+     * How many prepared statements each connection keeps open for reuse. 0 turns statement caching off.
+     */
+    private static int statementCacheSize = Integer.getInteger("socialmedia.pool.statementCacheSize", 64);
+    /**
+     * a static pool shared by every DAO. Because it is static, any DAO interacting with the database is drawing
+     * connections from the same pool.
+     */
+    private static ConnectionPool pool = null;
+    /**
+     * Threads for running queries off the request threads. Defaults to one per pooled connection.
+     */
+    private static int executorThreads = Integer.getInteger("socialmedia.jdbc.threads", maxPoolSize);
+    /**
+     * How many queries may wait for one of those threads before new ones are rejected.
+     */
+    private static int executorQueueSize = Integer.getInteger("socialmedia.jdbc.queueSize", 1_000);
+    /**
+     * a static executor shared by the async services, created the first time it is needed.
+     */
+    private static JdbcExecutor executor = null;
+    /**
+     * Called after the database has been reset, so anything caching database contents in memory can drop it.
+     */
+    private static List<Runnable> resetListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the connection pool, setting up the database tables if this is the first time it has been used
+     */
+    public static synchronized ConnectionPool getPool(){
+        if(pool == null){
+            pool = new ConnectionPool(url, username, password, maxPoolSize, minIdle,
+                    acquireTimeoutMillis, idleTimeoutMillis, leakThresholdMillis, statementCacheSize);
+            registerMetrics(pool);
+            resetTestDatabase();
         }
 
-        return connection;
+        return pool;
+    }
+    /**
+     * @return the executor the async services run their queries on
+     */
+    public static synchronized JdbcExecutor getExecutor(){
+        if(executor == null){
+            executor = new JdbcExecutor(executorThreads, executorQueueSize);
+            registerMetrics(executor);
+        }
+
+        return executor;
+    }
+    /**
+     * @return an active connection to the database, borrowed from the pool. Close it to give it back.
+     */
+    public static Connection getConnection() throws SQLException {
+        return getPool().getConnection();
     }
     /**
      * For the purpose of testing, we will need to drop and recreate our database tables to keep it consistent across
      * all tests. The method will read the sql file in resources. This will be performed before every test.
      */
     public static void resetTestDatabase(){
-//        if there is no connection, use the getConnection method to set it up
-        if(connection == null){
-            getConnection();
-        }else {
-//            otherwise, recreate the tables without setting up a new connection
-            try {
-                FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-                RunScript.execute(connection, sqlReader);
-            } catch (SQLException | FileNotFoundException e) {
-                e.printStackTrace();
-            }
+        try (Connection connection = getConnection()) {
+            FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
+            RunScript.execute(connection, sqlReader);
+        } catch (SQLException | FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        for (Runnable listener : resetListeners) {
+            listener.run();
         }
     }
+    private static void registerMetrics(ConnectionPool pool){
+        Metrics.gauge("socialmedia_pool_connections", "Pooled connections by state.", "state=\"active\"",
+                pool::getActiveConnections);
+        Metrics.gauge("socialmedia_pool_connections", "Pooled connections by state.", "state=\"idle\"",
+                pool::getIdleConnections);
+        Metrics.gauge("socialmedia_pool_max_connections", "The most connections the pool will open.", "",
+                pool::getMaxSize);
+        Metrics.gauge("socialmedia_pool_threads_awaiting", "Threads waiting for a connection.", "",
+                pool::getThreadsAwaiting);
+        Metrics.counter("socialmedia_pool_acquires_total", "Connections borrowed.", "", pool::getAcquireCount);
+        Metrics.counter("socialmedia_pool_wait_seconds_total", "Time spent waiting for a connection.", "",
+                () -> pool.getTotalWaitNanos() / 1e9);
+        Metrics.counter("socialmedia_pool_timeouts_total", "Borrows that gave up waiting.", "", pool::getTimeoutCount);
+        Metrics.counter("socialmedia_pool_leaks_total", "Connections held past the leak threshold.", "",
+                pool::getLeakCount);
+        Metrics.gauge("socialmedia_pool_open_statements", "Prepared statements open across all connections.", "",
+                pool::getOpenStatements);
+        Metrics.gauge("socialmedia_pool_open_result_sets", "Result sets open across all connections.", "",
+                pool::getOpenResultSets);
+        Metrics.counter("socialmedia_pool_statement_cache_total", "Prepared statement lookups by result.",
+                "result=\"hit\"", pool::getStatementCacheHits);
+        Metrics.counter("socialmedia_pool_statement_cache_total", "Prepared statement lookups by result.",
+                "result=\"miss\"", pool::getStatementCacheMisses);
+    }
+
+    private static void registerMetrics(JdbcExecutor executor){
+        Metrics.gauge("socialmedia_jdbc_executor_active", "JDBC executor tasks running.", "", executor::getActiveCount);
+        Metrics.gauge("socialmedia_jdbc_executor_queued", "JDBC executor tasks waiting for a thread.", "",
+                executor::getQueueDepth);
+        Metrics.counter("socialmedia_jdbc_executor_tasks_total", "JDBC executor tasks by outcome.",
+                "outcome=\"completed\"", executor::getCompletedCount);
+        Metrics.counter("socialmedia_jdbc_executor_tasks_total", "JDBC executor tasks by outcome.",
+                "outcome=\"failed\"", executor::getFailedCount);
+        Metrics.counter("socialmedia_jdbc_executor_tasks_total", "JDBC executor tasks by outcome.",
+                "outcome=\"rejected\"", executor::getRejectedCount);
+        Metrics.counter("socialmedia_jdbc_executor_queue_seconds_total", "Time tasks spent waiting for a thread.", "",
+                () -> executor.getTotalQueueNanos() / 1e9);
+    }
+    /**
+     * Registers a callback to run every time resetTestDatabase() recreates the tables.
+     */
+    public static void addResetListener(Runnable listener){
+        resetListeners.add(listener);
+    }
 
 }
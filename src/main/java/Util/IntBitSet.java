@@ -0,0 +1,57 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe set of non-negative ints, one bit per possible value, that grows to fit the largest value added.
+ *
+ * Meant for dense ids such as auto_increment keys, where it costs one bit per id up to the highest one (125 KB per
+ * million). contains() never locks: it reads the current word array and one word. add() and clear() are serialized,
+ * so a word is never set in an array that is being copied into a bigger one.
+ */
+public class IntBitSet {
+
+  private static final int INITIAL_WORDS = 16;
+
+  private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_WORDS);
+
+  public boolean contains(int value) {
+
+    if (value < 0) {
+      return false;
+    }
+    AtomicLongArray current = words;
+    int index = value >>> 6;
+    return index < current.length() && (current.get(index) & (1L << value)) != 0;
+  }
+
+  /**
+   * @throws IllegalArgumentException if value is negative
+   */
+  public synchronized void add(int value) {
+
+    if (value < 0) {
+      throw new IllegalArgumentException("IntBitSet only holds non-negative values, got " + value);
+    }
+
+    int index = value >>> 6;
+    AtomicLongArray current = words;
+    if (index >= current.length()) {
+      // Double, so a run of increasing ids copies the array O(log n) times
+      int length = current.length();
+      while (length <= index) {
+        length = length > Integer.MAX_VALUE / 2 ? (Integer.MAX_VALUE >>> 6) + 1 : length * 2;
+      }
+      AtomicLongArray grown = new AtomicLongArray(length);
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      }
+      words = current = grown;
+    }
+    current.set(index, current.get(index) | (1L << value));
+  }
+
+  public synchronized void clear() {
+    words = new AtomicLongArray(INITIAL_WORDS);
+  }
+}
@@ -0,0 +1,368 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded, thread-safe LRU cache keyed by primitive ints, with optional expiry.
+ *
+ * Keys are never boxed: each segment is a small chained hash table of nodes that double as the entries of an
+ * access-ordered linked list. The cache is split into independently locked segments so concurrent readers of
+ * different keys rarely contend.
+ *
+ * For read-through use, callers that load a value from the database should take a stamp() before the load and
+ * install the result with putIfUnchanged(). If a writer put() or remove()d anything in the key's segment in the
+ * meantime, the possibly stale value is dropped instead of being cached.
+ */
+public class IntLruCache<V> {
+
+  private static final int SEGMENTS = 16;
+
+  private final Segment<V>[] segments;
+  private final long ttlNanos;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  /**
+   * @param maxSize   the most entries the cache will hold
+   * @param ttlMillis how long an entry stays valid after it is written, or 0 for no expiry
+   */
+  @SuppressWarnings("unchecked")
+  public IntLruCache(int maxSize, long ttlMillis) {
+
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1, was " + maxSize);
+    }
+
+    int segmentCount = Math.min(SEGMENTS, Integer.highestOneBit(maxSize));
+    int perSegment = (maxSize + segmentCount - 1) / segmentCount;
+
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment<>(perSegment);
+    }
+    this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0;
+  }
+
+  /**
+   * @return the cached value, or null if absent or expired
+   */
+  public V get(int key) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      Node<V> node = segment.find(key, hash);
+
+      if (node == null) {
+        misses.increment();
+        return null;
+      }
+      if (ttlNanos > 0 && System.nanoTime() - node.writtenAt > ttlNanos) {
+        segment.unlink(node);
+        expirations.increment();
+        misses.increment();
+        return null;
+      }
+
+      segment.moveToHead(node);
+      hits.increment();
+      return node.value;
+    }
+  }
+
+  /**
+   * Like get(), but doesn't count a hit or miss or make the entry most recently used, for callers that only want to
+   * know whether a get() would find it.
+   * @return the cached value, or null if absent or expired
+   */
+  public V peek(int key) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      Node<V> node = segment.find(key, hash);
+      if (node == null || ttlNanos > 0 && System.nanoTime() - node.writtenAt > ttlNanos) {
+        return null;
+      }
+      return node.value;
+    }
+  }
+
+  /**
+   * Caches value under key, replacing any existing entry. Meant for writers that know value is current.
+   */
+  public void put(int key, V value) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      segment.modifications++;
+      install(segment, key, hash, value);
+    }
+  }
+
+  /**
+   * @return a token to pass to putIfUnchanged() after loading the value for key
+   */
+  public long stamp(int key) {
+
+    Segment<V> segment = segmentFor(hash(key));
+    synchronized (segment) {
+      return segment.modifications;
+    }
+  }
+
+  /**
+   * Caches a value loaded by a reader, unless a writer has touched the key's segment since stamp was taken.
+   * @return true if the value was cached
+   */
+  public boolean putIfUnchanged(int key, V value, long stamp) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      if (segment.modifications != stamp) {
+        return false;
+      }
+      install(segment, key, hash, value);
+      return true;
+    }
+  }
+
+  /**
+   * Atomically replaces the entry for key with update(current value), if there is one. If update returns null the
+   * entry is removed. Counts as a write for stamp() either way, so a concurrent read-through load can't overwrite it.
+   */
+  public void computeIfPresent(int key, UnaryOperator<V> update) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      segment.modifications++;
+      Node<V> node = segment.find(key, hash);
+      if (node == null) {
+        return;
+      }
+
+      V value = update.apply(node.value);
+      if (value == null) {
+        segment.unlink(node);
+      } else {
+        node.value = value;
+      }
+    }
+  }
+
+  public void remove(int key) {
+
+    int hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+
+    synchronized (segment) {
+      segment.modifications++;
+      Node<V> node = segment.find(key, hash);
+      if (node != null) {
+        segment.unlink(node);
+      }
+    }
+  }
+
+  public void clear() {
+
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        segment.modifications++;
+        segment.clear();
+      }
+    }
+  }
+
+  public int size() {
+
+    int size = 0;
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size;
+      }
+    }
+    return size;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /** Entries dropped to make room for new ones. */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /** Entries dropped because they outlived the ttl. */
+  public long getExpirationCount() {
+    return expirations.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "IntLruCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+        + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount() + '}';
+  }
+
+  private void install(Segment<V> segment, int key, int hash, V value) {
+
+    Node<V> node = segment.find(key, hash);
+    if (node != null) {
+      node.value = value;
+      node.writtenAt = System.nanoTime();
+      segment.moveToHead(node);
+      return;
+    }
+
+    segment.insert(new Node<>(key, hash, value, System.nanoTime()));
+    if (segment.size > segment.capacity) {
+      segment.unlink(segment.tail);
+      evictions.increment();
+    }
+  }
+
+  private Segment<V> segmentFor(int hash) {
+    // The low bits pick the bucket within a segment, so use the high bits to pick the segment.
+    return segments[(hash >>> 16) & (segments.length - 1)];
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static class Node<V> {
+
+    final int key;
+    final int hash;
+    V value;
+    long writtenAt;
+
+    Node<V> nextInBucket;
+    Node<V> newer;
+    Node<V> older;
+
+    Node(int key, int hash, V value, long writtenAt) {
+      this.key = key;
+      this.hash = hash;
+      this.value = value;
+      this.writtenAt = writtenAt;
+    }
+  }
+
+  /**
+   * A chained hash table plus an LRU list running from head (most recently used) to tail. Always accessed while
+   * holding the segment's monitor.
+   */
+  private static class Segment<V> {
+
+    final int capacity;
+    final Node<V>[] buckets;
+    int size;
+    long modifications;
+    Node<V> head;
+    Node<V> tail;
+
+    @SuppressWarnings("unchecked")
+    Segment(int capacity) {
+      this.capacity = capacity;
+      // Power of two, at least twice the capacity, keeps chains short.
+      this.buckets = new Node[Integer.highestOneBit(Math.max(capacity, 1)) * 4];
+    }
+
+    Node<V> find(int key, int hash) {
+      for (Node<V> node = buckets[hash & (buckets.length - 1)]; node != null; node = node.nextInBucket) {
+        if (node.key == key) {
+          return node;
+        }
+      }
+      return null;
+    }
+
+    void insert(Node<V> node) {
+      int index = node.hash & (buckets.length - 1);
+      node.nextInBucket = buckets[index];
+      buckets[index] = node;
+      linkAtHead(node);
+      size++;
+    }
+
+    void unlink(Node<V> node) {
+      int index = node.hash & (buckets.length - 1);
+      Node<V> previous = null;
+      for (Node<V> current = buckets[index]; current != null; current = current.nextInBucket) {
+        if (current == node) {
+          if (previous == null) {
+            buckets[index] = current.nextInBucket;
+          } else {
+            previous.nextInBucket = current.nextInBucket;
+          }
+          break;
+        }
+        previous = current;
+      }
+      removeFromList(node);
+      size--;
+    }
+
+    void moveToHead(Node<V> node) {
+      if (head != node) {
+        removeFromList(node);
+        linkAtHead(node);
+      }
+    }
+
+    void clear() {
+      Arrays.fill(buckets, null);
+      head = null;
+      tail = null;
+      size = 0;
+    }
+
+    private void linkAtHead(Node<V> node) {
+      node.older = head;
+      node.newer = null;
+      if (head != null) {
+        head.newer = node;
+      }
+      head = node;
+      if (tail == null) {
+        tail = node;
+      }
+    }
+
+    private void removeFromList(Node<V> node) {
+      if (node.newer != null) {
+        node.newer.older = node.older;
+      } else {
+        head = node.older;
+      }
+      if (node.older != null) {
+        node.older.newer = node.newer;
+      } else {
+        tail = node.newer;
+      }
+      node.newer = null;
+      node.older = null;
+    }
+  }
+}
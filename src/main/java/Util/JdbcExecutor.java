@@ -0,0 +1,171 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of threads for blocking JDBC work, so callers on request threads can get a CompletableFuture back
+ * instead of blocking on the database themselves.
+ *
+ * - There are as many threads as the ConnectionPool has connections by default, so a task never waits on the pool
+ *   for a connection another of our own threads is holding.
+ * - At most queueSize tasks wait for a thread. Beyond that, supply() returns a future that has already failed with a
+ *   RejectedExecutionException, so overload turns into fast errors instead of an ever-growing backlog.
+ * - Each task's time in the queue and time running are recorded separately.
+ */
+public class JdbcExecutor implements AutoCloseable {
+
+  private final ThreadPoolExecutor executor;
+  private final int queueSize;
+
+  // ~~ METRICS ~~
+  private final LongAdder submittedCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+  private final LongAdder completedCount = new LongAdder();
+  private final LongAdder totalQueueNanos = new LongAdder();
+  private final AtomicLong maxQueueNanos = new AtomicLong();
+  private final LongAdder totalExecuteNanos = new LongAdder();
+  private final AtomicLong maxExecuteNanos = new AtomicLong();
+
+  public JdbcExecutor(int threads, int queueSize) {
+
+    if (threads < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("threads and queueSize must be at least 1, were " + threads + ", "
+          + queueSize);
+    }
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), task -> {
+          Thread thread = new Thread(task, "jdbc-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * Runs query on one of the JDBC threads.
+   * @return a future for the query's result. It fails with RejectedExecutionException if the queue is full, or with
+   *         whatever query throws.
+   */
+  public <T> CompletableFuture<T> supply(Supplier<T> query) {
+
+    CompletableFuture<T> future = new CompletableFuture<>();
+    long submittedAt = System.nanoTime();
+
+    try {
+      executor.execute(() -> {
+        long startedAt = System.nanoTime();
+        record(startedAt - submittedAt, totalQueueNanos, maxQueueNanos);
+        try {
+          future.complete(query.get());
+          completedCount.increment();
+        } catch (Throwable e) {
+          failedCount.increment();
+          future.completeExceptionally(e);
+        } finally {
+          record(System.nanoTime() - startedAt, totalExecuteNanos, maxExecuteNanos);
+        }
+      });
+      submittedCount.increment();
+    } catch (RejectedExecutionException e) {
+      rejectedCount.increment();
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  private static void record(long nanos, LongAdder total, AtomicLong max) {
+    total.add(nanos);
+    max.accumulateAndGet(nanos, Math::max);
+  }
+
+  // ~~ METRICS ~~
+
+  public int getThreads() {
+    return executor.getMaximumPoolSize();
+  }
+
+  public int getQueueCapacity() {
+    return queueSize;
+  }
+
+  /** Tasks waiting for a thread right now. */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /** Tasks running right now. */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  public long getSubmittedCount() {
+    return submittedCount.sum();
+  }
+
+  /** Tasks turned away because the queue was full. */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /** Tasks that threw. */
+  public long getFailedCount() {
+    return failedCount.sum();
+  }
+
+  public long getCompletedCount() {
+    return completedCount.sum();
+  }
+
+  /** Time tasks spent waiting in the queue, in total. */
+  public long getTotalQueueNanos() {
+    return totalQueueNanos.sum();
+  }
+
+  public long getMaxQueueNanos() {
+    return maxQueueNanos.get();
+  }
+
+  /** Time tasks spent running, in total. */
+  public long getTotalExecuteNanos() {
+    return totalExecuteNanos.sum();
+  }
+
+  public long getMaxExecuteNanos() {
+    return maxExecuteNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    long started = getCompletedCount() + getFailedCount();
+    return "JdbcExecutor{" +
+        "threads=" + getThreads() +
+        ", active=" + getActiveCount() +
+        ", queued=" + getQueueDepth() + "/" + queueSize +
+        ", submitted=" + getSubmittedCount() +
+        ", rejected=" + getRejectedCount() +
+        ", failed=" + getFailedCount() +
+        ", avgQueueMicros=" + (started == 0 ? 0 : getTotalQueueNanos() / started / 1000) +
+        ", maxQueueMicros=" + getMaxQueueNanos() / 1000 +
+        ", avgExecuteMicros=" + (started == 0 ? 0 : getTotalExecuteNanos() / started / 1000) +
+        ", maxExecuteMicros=" + getMaxExecuteNanos() / 1000 +
+        '}';
+  }
+}
@@ -0,0 +1,30 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * The one ObjectMapper shared by the whole application, plus readers and writers for our model types resolved up
+ * front.
+ *
+ * ObjectMapper is thread-safe and caches the serializers it builds, so creating one per request throws that work
+ * away every time. ObjectReader/ObjectWriter go one step further and skip the per-call type lookup.
+ */
+public class JsonUtil {
+
+  public static final ObjectMapper MAPPER = new ObjectMapper();
+
+  public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+  public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+  public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>() {});
+
+  public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+  public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+}
@@ -0,0 +1,113 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe latency histogram in the style of HdrHistogram: fixed memory, constant-time record(), and percentiles
+ * accurate to a bounded relative error however long it runs.
+ *
+ * Values are nanoseconds. Below 32ns every value has its own bucket; above that each power of two is split into 16
+ * buckets, so a reported percentile is at most 6.25% above the true value. Everything from about 73 minutes up shares
+ * the last bucket. That's 625 buckets, about 5 KB.
+ *
+ * record() is one increment of the bucket's counter plus two LongAdders, with no locks or allocation, so it can stay
+ * on in production. Percentiles are read from a snapshot of the buckets and may be a few records behind concurrent
+ * writers.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+  private static final int MAX_EXPONENT = 42;
+  // Plus one overflow bucket for everything from 2^MAX_EXPONENT up
+  private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    count.increment();
+    totalNanos.add(value);
+
+    long max = maxNanos.get();
+    while (value > max && !maxNanos.compareAndSet(max, value)) {
+      max = maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @param quantiles each between 0 and 1, e.g. 0.99
+   * @return the value at each quantile, in nanoseconds, from one snapshot. 0 if nothing has been recorded.
+   */
+  public long[] getQuantiles(double... quantiles) {
+
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    long max = getMaxNanos();
+
+    long[] values = new long[quantiles.length];
+    for (int q = 0; q < quantiles.length; q++) {
+      long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS && total > 0; i++) {
+        seen += snapshot[i];
+        if (seen >= rank) {
+          values[q] = Math.min(upperBound(i), max);
+          break;
+        }
+      }
+    }
+    return values;
+  }
+
+  private static int index(long value) {
+
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent >= MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+  }
+
+  // The largest value that lands in the bucket
+  private static long upperBound(int index) {
+
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    if (index == BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+    int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,254 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Built-in instrumentation, exported in the Prometheus text format on GET /metrics.
+ *
+ * - Every HTTP request is timed per route (method plus the route's path template, e.g. GET /messages/{message_id})
+ *   into a LatencyHistogram, and counted per status code. Statuses of 500 and up also count as errors.
+ * - Every DAO method is timed the same way through an Operation, and calls that throw are counted. So are the
+ *   in-memory updates MessageService makes after each new message (MessageService.onInsert).
+ * - Components register gauges and counters that are read when /metrics is scraped: the connection pool, the JDBC
+ *   executor, the write batcher, the purger and the caches.
+ *
+ * Latencies are exported as summaries in seconds with the 0.5, 0.9, 0.99 and 0.999 quantiles since startup, plus a
+ * _max gauge. Request rates are rate() of the _count or the _total counters.
+ *
+ * Recording is a map lookup, a bucket increment and a few LongAdders, so it is on by default. Turn it off with
+ * -Dsocialmedia.metrics.enabled=false.
+ */
+public class Metrics {
+
+  public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("socialmedia.metrics.enabled", "true"));
+
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  // method -> path template -> stats, so recording a request doesn't build a key
+  private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Route>> routes = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+  private static final LongAdder requestsInFlight = new LongAdder();
+
+  // Callback gauges and counters by metric name, in the order they'll be written
+  private static final Map<String, Family> families = new TreeMap<>();
+
+  // ~~ HTTP ~~
+
+  public static void requestStarted() {
+    requestsInFlight.increment();
+  }
+
+  /**
+   * @param route the path template the request matched, or anything not starting with / if it matched none
+   */
+  public static void requestFinished(String method, String route, int status, long nanos) {
+
+    requestsInFlight.decrement();
+
+    String path = route != null && route.startsWith("/") ? route : "unmatched";
+    Route stats = routes.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+        .computeIfAbsent(path, p -> new Route());
+    stats.latency.record(nanos);
+    stats.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    if (status >= 500) {
+      stats.errors.increment();
+    }
+  }
+
+  // ~~ DAO ~~
+
+  /**
+   * @param name the DAO method, e.g. MessageDAO.getMessageById
+   * @return its Operation, the same one every time for the same name
+   */
+  public static Operation operation(String name) {
+    return operations.computeIfAbsent(name, n -> new Operation());
+  }
+
+  // ~~ CALLBACK METRICS ~~
+
+  /**
+   * Registers a value that goes up and down, read on every scrape.
+   * @param labels Prometheus labels for this series, e.g. cache="messages", or "" for none
+   */
+  public static void gauge(String name, String help, String labels, DoubleSupplier value) {
+    register(name, help, "gauge", labels, value);
+  }
+
+  /**
+   * Registers a value that only goes up, read on every scrape. name should end in _total.
+   */
+  public static void counter(String name, String help, String labels, DoubleSupplier value) {
+    register(name, help, "counter", labels, value);
+  }
+
+  private static synchronized void register(String name, String help, String type, String labels,
+      DoubleSupplier value) {
+    families.computeIfAbsent(name, n -> new Family(help, type)).series.put(labels, value);
+  }
+
+  // ~~ EXPORT ~~
+
+  /**
+   * @return every metric in the Prometheus text exposition format (version 0.0.4)
+   */
+  public static String scrape() {
+
+    StringBuilder out = new StringBuilder(16 * 1024);
+
+    header(out, "socialmedia_http_requests_in_flight", "HTTP requests being handled right now.", "gauge");
+    sample(out, "socialmedia_http_requests_in_flight", "", requestsInFlight.sum());
+
+    header(out, "socialmedia_http_request_duration_seconds", "HTTP request latency by route.", "summary");
+    forEachRoute((labels, route) -> latency(out, "socialmedia_http_request_duration_seconds", labels, route.latency));
+    header(out, "socialmedia_http_request_duration_seconds_max", "Slowest HTTP request by route.", "gauge");
+    forEachRoute((labels, route) -> sample(out, "socialmedia_http_request_duration_seconds_max", labels,
+        route.latency.getMaxNanos() / 1e9));
+    header(out, "socialmedia_http_requests_total", "HTTP requests by route and status.", "counter");
+    forEachRoute((labels, route) -> new TreeMap<>(route.statuses).forEach((status, count) ->
+        sample(out, "socialmedia_http_requests_total", labels + ",status=\"" + status + "\"", count.sum())));
+    header(out, "socialmedia_http_request_errors_total", "HTTP requests answered with a 5xx status, by route.",
+        "counter");
+    forEachRoute((labels, route) -> sample(out, "socialmedia_http_request_errors_total", labels, route.errors.sum()));
+
+    Map<String, Operation> sortedOperations = new TreeMap<>(operations);
+    header(out, "socialmedia_dao_duration_seconds", "DAO method latency.", "summary");
+    sortedOperations.forEach((name, op) -> latency(out, "socialmedia_dao_duration_seconds", operationLabel(name),
+        op.latency));
+    header(out, "socialmedia_dao_duration_seconds_max", "Slowest DAO method call.", "gauge");
+    sortedOperations.forEach((name, op) -> sample(out, "socialmedia_dao_duration_seconds_max", operationLabel(name),
+        op.latency.getMaxNanos() / 1e9));
+    header(out, "socialmedia_dao_errors_total", "DAO method calls that threw.", "counter");
+    sortedOperations.forEach((name, op) -> sample(out, "socialmedia_dao_errors_total", operationLabel(name),
+        op.errors.sum()));
+
+    synchronized (Metrics.class) {
+      families.forEach((name, family) -> {
+        header(out, name, family.help, family.type);
+        family.series.forEach((labels, value) -> sample(out, name, labels, value.getAsDouble()));
+      });
+    }
+
+    return out.toString();
+  }
+
+  private interface RouteVisitor {
+    void visit(String labels, Route route);
+  }
+
+  private static void forEachRoute(RouteVisitor visitor) {
+    new TreeMap<>(routes).forEach((method, paths) -> new TreeMap<>(paths).forEach((path, route) ->
+        visitor.visit("method=\"" + method + "\",route=\"" + escape(path) + "\"", route)));
+  }
+
+  private static String operationLabel(String name) {
+    return "operation=\"" + escape(name) + "\"";
+  }
+
+  private static void latency(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+
+    long[] values = histogram.getQuantiles(QUANTILES);
+    for (int i = 0; i < QUANTILES.length; i++) {
+      sample(out, name, labels + ",quantile=\"" + QUANTILES[i] + "\"", values[i] / 1e9);
+    }
+    sample(out, name + "_sum", labels, histogram.getTotalNanos() / 1e9);
+    sample(out, name + "_count", labels, histogram.getCount());
+  }
+
+  private static void header(StringBuilder out, String name, String help, String type) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.append((long) value);
+    } else {
+      out.append(value);
+    }
+    out.append('\n');
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static class Route {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    final LongAdder errors = new LongAdder();
+  }
+
+  private static class Family {
+    final String help;
+    final String type;
+    final Map<String, DoubleSupplier> series = new TreeMap<>();
+
+    Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+    }
+  }
+
+  /**
+   * Times one DAO method. Each method keeps its own in a static field.
+   */
+  public static class Operation {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Runs call, recording how long it took and whether it threw.
+     */
+    public <T, E extends Exception> T time(Call<T, E> call) throws E {
+
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        T result = call.call();
+        failed = false;
+        return result;
+      } finally {
+        record(start, failed);
+      }
+    }
+
+    /**
+     * For calls that don't fit time(): take System.nanoTime() before, and pass it here after.
+     */
+    public void record(long startNanos, boolean failed) {
+
+      if (!ENABLED) {
+        return;
+      }
+      latency.record(System.nanoTime() - startNanos);
+      if (failed) {
+        errors.increment();
+      }
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getErrorCount() {
+      return errors.sum();
+    }
+  }
+
+  @FunctionalInterface
+  public interface Call<T, E extends Exception> {
+    T call() throws E;
+  }
+}
@@ -0,0 +1,198 @@
+package Util;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * Hand-written JSON encoding and decoding for Message and Account, working directly on Jackson's streaming
+ * JsonGenerator/JsonParser. No reflection or bean introspection is involved, and field names are pre-encoded.
+ *
+ * It produces and accepts the same JSON as the databind ObjectMapper does for these classes: the same property
+ * names, numeric strings and nulls coerced the same way, and unknown properties rejected.
+ */
+public class ModelCodec {
+
+  private static final SerializedString MESSAGE_ID = new SerializedString("message_id");
+  private static final SerializedString POSTED_BY = new SerializedString("posted_by");
+  private static final SerializedString MESSAGE_TEXT = new SerializedString("message_text");
+  private static final SerializedString TIME_POSTED_EPOCH = new SerializedString("time_posted_epoch");
+
+  private static final SerializedString ACCOUNT_ID = new SerializedString("account_id");
+  private static final SerializedString USERNAME = new SerializedString("username");
+  private static final SerializedString PASSWORD = new SerializedString("password");
+
+  // ~~ MESSAGE ~~
+
+  public static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+
+    generator.writeStartObject();
+    generator.writeFieldName(MESSAGE_ID);
+    generator.writeNumber(message.getMessage_id());
+    generator.writeFieldName(POSTED_BY);
+    generator.writeNumber(message.getPosted_by());
+    generator.writeFieldName(MESSAGE_TEXT);
+    generator.writeString(message.getMessage_text());
+    generator.writeFieldName(TIME_POSTED_EPOCH);
+    generator.writeNumber(message.getTime_posted_epoch());
+    generator.writeEndObject();
+  }
+
+  public static void writeMessages(JsonGenerator generator, List<Message> messages) throws IOException {
+
+    generator.writeStartArray();
+    for (Message message : messages) {
+      writeMessage(generator, message);
+    }
+    generator.writeEndArray();
+  }
+
+  /**
+   * Reads one Message object. The parser may be positioned before the object or on its START_OBJECT token; it is
+   * left on the matching END_OBJECT.
+   */
+  public static Message readMessage(JsonParser parser) throws IOException {
+
+    startObject(parser);
+
+    Message message = new Message();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+
+      switch (field) {
+        case "message_id":
+          message.setMessage_id(readInt(parser));
+          break;
+        case "posted_by":
+          message.setPosted_by(readInt(parser));
+          break;
+        case "message_text":
+          message.setMessage_text(readString(parser));
+          break;
+        case "time_posted_epoch":
+          message.setTime_posted_epoch(readLong(parser));
+          break;
+        default:
+          throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" for Message");
+      }
+    }
+
+    return message;
+  }
+
+  // ~~ ACCOUNT ~~
+
+  public static void writeAccount(JsonGenerator generator, Account account) throws IOException {
+
+    generator.writeStartObject();
+    generator.writeFieldName(ACCOUNT_ID);
+    generator.writeNumber(account.getAccount_id());
+    generator.writeFieldName(USERNAME);
+    generator.writeString(account.getUsername());
+    generator.writeFieldName(PASSWORD);
+    generator.writeString(account.getPassword());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Reads one Account object. See readMessage().
+   */
+  public static Account readAccount(JsonParser parser) throws IOException {
+
+    startObject(parser);
+
+    Account account = new Account();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+
+      switch (field) {
+        case "account_id":
+          account.setAccount_id(readInt(parser));
+          break;
+        case "username":
+          account.setUsername(readString(parser));
+          break;
+        case "password":
+          account.setPassword(readString(parser));
+          break;
+        default:
+          throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" for Account");
+      }
+    }
+
+    return account;
+  }
+
+  // ~~ HELPERS ~~
+
+  private static void startObject(JsonParser parser) throws IOException {
+
+    JsonToken token = parser.currentToken();
+    if (token == null || token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+      token = parser.nextToken();
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+    }
+  }
+
+  private static int readInt(JsonParser parser) throws IOException {
+
+    switch (parser.currentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getIntValue();
+      case VALUE_NULL:
+        return 0;
+      case VALUE_STRING:
+        try {
+          return Integer.parseInt(parser.getText().trim());
+        } catch (NumberFormatException e) {
+          throw new JsonParseException(parser, "Not an int: \"" + parser.getText() + "\"", e);
+        }
+      default:
+        throw new JsonParseException(parser, "Expected an int but found " + parser.currentToken());
+    }
+  }
+
+  private static long readLong(JsonParser parser) throws IOException {
+
+    switch (parser.currentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getLongValue();
+      case VALUE_NULL:
+        return 0L;
+      case VALUE_STRING:
+        try {
+          return Long.parseLong(parser.getText().trim());
+        } catch (NumberFormatException e) {
+          throw new JsonParseException(parser, "Not a long: \"" + parser.getText() + "\"", e);
+        }
+      default:
+        throw new JsonParseException(parser, "Expected a long but found " + parser.currentToken());
+    }
+  }
+
+  private static String readString(JsonParser parser) throws IOException {
+
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token.isScalarValue()) {
+      return parser.getText();
+    }
+    throw new JsonParseException(parser, "Expected a string but found " + token);
+  }
+}
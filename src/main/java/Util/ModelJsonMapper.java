@@ -0,0 +1,147 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The JsonMapper plugged into Javalin, so ctx.jsonStream(...) and ctx.bodyStreamAsClass(...) go through our shared
+ * mapper instead of Javalin building its own.
+ *
+ * Message, Account and lists of messages are encoded with ModelCodec (unless socialmedia.json.codec=false) straight
+ * into a byte buffer that becomes the response body without an intermediate String. Anything else falls back to the
+ * shared ObjectMapper in JsonUtil.
+ */
+public class ModelJsonMapper implements JsonMapper {
+
+  /**
+   * Set socialmedia.json.codec=false to go through Jackson databind for everything.
+   */
+  public static final boolean USE_CODEC = Boolean.parseBoolean(System.getProperty("socialmedia.json.codec", "true"));
+
+  @Override
+  public String toJsonString(Object obj, Type type) {
+
+    if (obj instanceof String) { // Already JSON
+      return (String) obj;
+    }
+    return new String(toBytes(obj), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public InputStream toJsonStream(Object obj, Type type) {
+
+    if (obj instanceof String) {
+      return new ByteArrayInputStream(((String) obj).getBytes(StandardCharsets.UTF_8));
+    }
+
+    ResponseBuffer buffer = new ResponseBuffer(estimateSize(obj));
+    write(obj, buffer);
+    return buffer.toInputStream();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T fromJsonString(String json, Type type) {
+
+    try (JsonParser parser = JsonUtil.MAPPER.getFactory().createParser(json)) {
+      return (T) read(parser, type);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T fromJsonStream(InputStream json, Type type) {
+
+    try (JsonParser parser = JsonUtil.MAPPER.getFactory().createParser(json)) {
+      return (T) read(parser, type);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Encodes obj to UTF-8 JSON bytes.
+   */
+  public static byte[] toBytes(Object obj) {
+
+    ResponseBuffer buffer = new ResponseBuffer(estimateSize(obj));
+    write(obj, buffer);
+    return buffer.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void write(Object obj, ByteArrayOutputStream out) {
+
+    try (JsonGenerator generator = JsonUtil.MAPPER.getFactory().createGenerator(out)) {
+
+      if (USE_CODEC && obj instanceof Message) {
+        ModelCodec.writeMessage(generator, (Message) obj);
+      } else if (USE_CODEC && obj instanceof Account) {
+        ModelCodec.writeAccount(generator, (Account) obj);
+      } else if (USE_CODEC && isMessageList(obj)) {
+        ModelCodec.writeMessages(generator, (List<Message>) obj);
+      } else if (obj instanceof Message) {
+        JsonUtil.MESSAGE_WRITER.writeValue(generator, obj);
+      } else if (obj instanceof Account) {
+        JsonUtil.ACCOUNT_WRITER.writeValue(generator, obj);
+      } else if (isMessageList(obj)) {
+        JsonUtil.MESSAGE_LIST_WRITER.writeValue(generator, obj);
+      } else {
+        JsonUtil.MAPPER.writeValue(generator, obj);
+      }
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Object read(JsonParser parser, Type type) throws IOException {
+
+    if (type == Message.class) {
+      return USE_CODEC ? ModelCodec.readMessage(parser) : JsonUtil.MESSAGE_READER.readValue(parser);
+    }
+    if (type == Account.class) {
+      return USE_CODEC ? ModelCodec.readAccount(parser) : JsonUtil.ACCOUNT_READER.readValue(parser);
+    }
+    return JsonUtil.MAPPER.readValue(parser, JsonUtil.MAPPER.constructType(type));
+  }
+
+  // Sized so that a typical message list is encoded without the buffer having to grow and copy itself.
+  private static int estimateSize(Object obj) {
+    return obj instanceof List ? 2 + 128 * ((List<?>) obj).size() : 256;
+  }
+
+  // An empty list has no element to check, but it encodes the same either way.
+  private static boolean isMessageList(Object obj) {
+    return obj instanceof List && (((List<?>) obj).isEmpty() || ((List<?>) obj).get(0) instanceof Message);
+  }
+
+  /**
+   * Hands its internal array to the response as-is, rather than copying it like toByteArray() does.
+   */
+  private static class ResponseBuffer extends ByteArrayOutputStream {
+
+    ResponseBuffer(int size) {
+      super(size);
+    }
+
+    InputStream toInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors used for keyset pagination.
+ *
+ * A cursor holds the sort key of the last row on a page (e.g. its message_id). Clients pass it back unchanged as
+ * ?after= to get the next page, and the DAO turns it into a "where key > ?" range scan on an index, so every page
+ * costs the same no matter how deep into the results it is.
+ */
+public class PageCursor {
+
+  private static final String VERSION = "v1";
+
+  /**
+   * @param keys the sort key of the last row on the page, most significant first
+   * @return a url-safe token for the client to hand back as ?after=
+   */
+  public static String encode(long... keys) {
+
+    StringBuilder raw = new StringBuilder(VERSION);
+    for (long key : keys) {
+      raw.append(':').append(key);
+    }
+
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param cursor a token previously returned by encode()
+   * @param arity  how many keys the caller expects the cursor to hold
+   * @return the decoded keys
+   * @throws IllegalArgumentException if the cursor is malformed or holds the wrong number of keys
+   */
+  public static long[] decode(String cursor, int arity) {
+
+    String raw;
+    try {
+      raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+    }
+
+    String[] parts = raw.split(":");
+    if (parts.length != arity + 1 || !parts[0].equals(VERSION)) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor);
+    }
+
+    long[] keys = new long[arity];
+    try {
+      for (int i = 0; i < arity; i++) {
+        keys[i] = Long.parseLong(parts[i + 1]);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+    }
+
+    return keys;
+  }
+}
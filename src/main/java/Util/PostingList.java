@@ -0,0 +1,99 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An increasing list of non-negative ints, compressed as variable-length deltas: each value is stored as its distance
+ * from the one before, 7 bits per byte with the high bit meaning "more bytes follow". Ids that are close together,
+ * as an inverted index's document ids are for common terms, take one byte each instead of four.
+ *
+ * Values can only be appended in increasing order. Not thread-safe: callers synchronize.
+ */
+public class PostingList {
+
+  private byte[] bytes = new byte[4];
+  private int length;
+  private int size;
+  private int last = -1;
+
+  /**
+   * @throws IllegalArgumentException if value isn't greater than every value already added
+   */
+  public void add(int value) {
+
+    if (value <= last) {
+      throw new IllegalArgumentException("PostingList values must increase: " + value + " after " + last);
+    }
+    if (length + 5 > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+    }
+
+    // Unsigned, so the first delta (value + 1) can't overflow
+    int delta = value - last;
+    while ((delta & ~0x7F) != 0) {
+      bytes[length++] = (byte) (delta | 0x80);
+      delta >>>= 7;
+    }
+    bytes[length++] = (byte) delta;
+
+    size++;
+    last = value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the compressed size in bytes
+   */
+  public int byteSize() {
+    return length;
+  }
+
+  /**
+   * @return every value, in increasing order
+   */
+  public int[] toArray() {
+
+    int[] values = new int[size];
+    int value = -1;
+    int position = 0;
+    for (int i = 0; i < size; i++) {
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      value += delta;
+      values[i] = value;
+    }
+    return values;
+  }
+
+  /**
+   * Drops the values keep rejects and replaces the rest with renumber(value). renumber must keep them in increasing
+   * order.
+   */
+  public void rewrite(IntPredicate keep, IntUnaryOperator renumber) {
+
+    int[] values = toArray();
+    bytes = new byte[Math.max(4, length)];
+    length = 0;
+    size = 0;
+    last = -1;
+    for (int value : values) {
+      if (keep.test(value)) {
+        add(renumber.applyAsInt(value));
+      }
+    }
+    if (bytes.length > 2 * length + 4) {
+      bytes = Arrays.copyOf(bytes, length);
+    }
+  }
+}
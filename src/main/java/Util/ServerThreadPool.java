@@ -0,0 +1,50 @@
+package Util;
+
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the thread pool Jetty serves requests with.
+ *
+ * By default this is the same bounded pool of platform threads Javalin would create. Every handler blocks on JDBC,
+ * so that pool caps how many requests can be in progress at once.
+ *
+ * Start the JVM with -Dsocialmedia.virtualThreads=true (on Java 21+) to have Jetty run each request on its own
+ * virtual thread instead. Jetty's selectors and acceptors stay on the platform pool; only the blocking request
+ * handling moves. The database still only sees as many concurrent queries as the ConnectionPool allows - extra
+ * requests park cheaply while waiting for a connection instead of each holding a platform thread.
+ */
+public class ServerThreadPool {
+
+  private static final Logger log = LoggerFactory.getLogger(ServerThreadPool.class);
+
+  public static final String VIRTUAL_THREADS_PROPERTY = "socialmedia.virtualThreads";
+
+  // Javalin's defaults
+  private static final int MAX_THREADS = 250;
+  private static final int MIN_THREADS = 8;
+  private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+  /**
+   * Reads socialmedia.virtualThreads each time it is called, so one JVM can start servers in both modes.
+   */
+  public static QueuedThreadPool create() {
+
+    QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT_MILLIS);
+    threadPool.setName("JettyServerThreadPool");
+
+    if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+      if (VirtualThreads.areSupported()) {
+        threadPool.setUseVirtualThreads(true);
+        log.info("Handling requests on virtual threads");
+      } else {
+        log.warn("-D" + VIRTUAL_THREADS_PROPERTY + " is set but this Java runtime (" + System.getProperty("java.version")
+            + ") has no virtual threads. Falling back to platform threads.");
+      }
+    }
+
+    return threadPool;
+  }
+}
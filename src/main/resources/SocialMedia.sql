@@ -1,3 +1,4 @@
+drop table if exists follow;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +11,27 @@ create table message (
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
+    deleted boolean default false not null,
     foreign key (posted_by) references  account(account_id)
 );
+-- keyset pagination over one account's messages: where posted_by = ? and message_id > ? order by message_id. H2 only
+-- walks an index in its declared order, so the desc index below would read and sort the account's whole history
+create index message_posted_by_id_idx on message (posted_by, message_id);
+-- one account's messages newest first, for home timelines: where posted_by = ? and message_id < ? order by message_id desc
+create index message_posted_by_id_desc_idx on message (posted_by, message_id desc);
+-- live rows in message_id order (where not deleted and message_id > ?), and tombstones for the purger
+create index message_deleted_id_idx on message (deleted, message_id);
+-- time ranges over live rows in time order: where not deleted and time_posted_epoch >= ? and time_posted_epoch < ?
+create index message_deleted_time_idx on message (deleted, time_posted_epoch, message_id);
+-- the same for one account
+create index message_posted_by_time_idx on message (posted_by, deleted, time_posted_epoch, message_id);
+create table follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountIndexTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending 20 concurrent POST localhost:8080/register requests for the same new username
+     *
+     * Expected Response:
+     *  Exactly one is a 200 and the rest are 400, and POST localhost:8080/login then logs in as that one account
+     */
+    @Test
+    public void racingRegistrationsCreateOneAccount() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(webClient.sendAsync(post("/register", "racer", "password" + i),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Account registered = null;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> actual = response.join();
+            if (actual.statusCode() == 200) {
+                Assert.assertNull(registered);
+                registered = objectMapper.readValue(actual.body(), Account.class);
+            } else {
+                Assert.assertEquals(400, actual.statusCode());
+            }
+        }
+        Assert.assertNotNull(registered);
+
+        HttpResponse<String> login = webClient.send(post("/login", "racer", registered.getPassword()),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals(registered.getAccount_id(),
+                objectMapper.readValue(login.body(), Account.class).getAccount_id());
+    }
+
+    /**
+     * Sending POST localhost:8080/login with the right and a wrong password, and POST localhost:8080/register for a
+     * username that is taken
+     *
+     * Expected Response:
+     *  200, 401 and 400, all answered without a statement being prepared against the database
+     */
+    @Test
+    public void loginAndDuplicateRegistrationAreAnsweredFromMemory() throws IOException, InterruptedException {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        long statementsBefore = pool.getStatementCacheHits() + pool.getStatementCacheMisses();
+
+        Assert.assertEquals(200, webClient.send(post("/login", "testuser1", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(401, webClient.send(post("/login", "testuser1", "wrong"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(400, webClient.send(post("/register", "testuser1", "password"),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(statementsBefore, pool.getStatementCacheHits() + pool.getStatementCacheMisses());
+    }
+
+    private HttpRequest post(String path, String username, String password) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BatchedMessageWriteTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending 50 concurrent POST localhost:8080/messages requests for user 1, so they are written together, plus one
+     * for a user that doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 200 with a distinct message_id for each good message, 400 for the bad one
+     *  GET localhost:8080/accounts/1/messages afterwards returns all 51 of user 1's messages
+     */
+    @Test
+    public void concurrentPostsAllGetIds() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(webClient.sendAsync(postMessage(1, "concurrent message " + i),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        HttpResponse<String> badResponse = webClient.send(postMessage(99, "no such user"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Set<Integer> ids = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> actual = response.join();
+            Assert.assertEquals(200, actual.statusCode());
+            Message message = objectMapper.readValue(actual.body(), Message.class);
+            Assert.assertEquals(1, message.getPosted_by());
+            ids.add(message.getMessage_id());
+        }
+        Assert.assertEquals(50, ids.size());
+        Assert.assertFalse(ids.contains(1));
+        Assert.assertEquals(400, badResponse.statusCode());
+
+        HttpRequest timelineRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> timelineResponse = webClient.send(timelineRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> timeline = objectMapper.readValue(timelineResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(51, timeline.size());
+    }
+
+    private HttpRequest postMessage(int postedBy, String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkMessageInsertTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/bulk?batch_size=2 with a JSON array of a good message, a message from a
+     * user that doesn't exist, a blank message and another good message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a JSON array with one result per message, in order: the two good messages with new ids (ids
+     *  taken by a rolled back batch aren't reused, so they may skip), and errors for the other two
+     */
+    @Test
+    public void bulkInsertJsonArray() throws IOException, InterruptedException {
+        HttpRequest request = bulkRequest("http://localhost:8080/messages/bulk?batch_size=2", "[" +
+                "{\"posted_by\":1, \"message_text\": \"bulk message 1\", \"time_posted_epoch\": 1669947793}," +
+                "{\"posted_by\":9, \"message_text\": \"no such user\", \"time_posted_epoch\": 1669947794}," +
+                "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947795}," +
+                "{\"posted_by\":1, \"message_text\": \"bulk message 2\", \"time_posted_epoch\": 1669947796}]");
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Map<String, Object>> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<Map<String, Object>>>(){});
+        Assert.assertEquals(4, results.size());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(i, results.get(i).get("index"));
+        }
+        Message first = objectMapper.convertValue(results.get(0).get("message"), Message.class);
+        Message last = objectMapper.convertValue(results.get(3).get("message"), Message.class);
+        Assert.assertEquals(new Message(first.getMessage_id(), 1, "bulk message 1", 1669947793), first);
+        Assert.assertNotNull(results.get(1).get("error"));
+        Assert.assertNotNull(results.get(2).get("error"));
+        Assert.assertEquals(new Message(last.getMessage_id(), 1, "bulk message 2", 1669947796), last);
+        Assert.assertTrue(1 < first.getMessage_id() && first.getMessage_id() < last.getMessage_id());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/bulk with NDJSON, then GET localhost:8080/accounts/1/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON result per line, and every message in the account's timeline afterwards
+     */
+    @Test
+    public void bulkInsertNdjson() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            body.append("{\"posted_by\":1, \"message_text\": \"bulk message ").append(i)
+                    .append("\", \"time_posted_epoch\": 1669947793}\n");
+        }
+        HttpResponse<String> response = webClient.send(bulkRequest("http://localhost:8080/messages/bulk?batch_size=10",
+                body.toString()), HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<String> lines = response.body().lines().collect(Collectors.toList());
+        Assert.assertEquals(25, lines.size());
+        for (String line : lines) {
+            Assert.assertTrue(line, line.contains("\"message\""));
+        }
+
+        HttpRequest timelineRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> timelineResponse = webClient.send(timelineRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> timeline = objectMapper.readValue(timelineResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(26, timeline.size());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/bulk?batch_size=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void bulkInsertBadBatchSize() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(bulkRequest("http://localhost:8080/messages/bulk?batch_size=0",
+                "[]"), HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private HttpRequest bulkRequest(String url, String body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web. Then register account 2.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/register",
+                "{\"username\": \"testuser2\", \"password\": \"password\"}"));
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages again with If-None-Match set to the ETag it came back with, then once more
+     * after a new message is posted
+     *
+     * Expected Response:
+     *  Status Code: 304 with no body and the same ETag, then 200 with the new message and a new ETag
+     */
+    @Test
+    public void unchangedMessagesAreNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> again = get("http://localhost:8080/messages", etag);
+        Assert.assertEquals(304, again.statusCode());
+        Assert.assertEquals("", again.body());
+        Assert.assertEquals(etag, again.headers().firstValue("ETag").orElseThrow());
+
+        postMessage(1);
+        HttpResponse<String> changed = get("http://localhost:8080/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertTrue(changed.body().contains("\"message_id\":2"));
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Getting messages 1 and 2 with their ETags, then updating message 2 and deleting it
+     *
+     * Expected Response:
+     *  Message 1 stays 304 throughout. Message 2 is 200 after the update and again after the delete.
+     */
+    @Test
+    public void messageEtagsChangeWithTheMessage() throws IOException, InterruptedException {
+        postMessage(1);
+        String etag1 = get("http://localhost:8080/messages/1", null).headers().firstValue("ETag").orElseThrow();
+        String etag2 = get("http://localhost:8080/messages/2", null).headers().firstValue("ETag").orElseThrow();
+
+        Assert.assertEquals(200, send("PATCH", "http://localhost:8080/messages/2", "{\"message_text\": \"edited\"}"));
+        Assert.assertEquals(304, get("http://localhost:8080/messages/1", etag1).statusCode());
+        HttpResponse<String> updated = get("http://localhost:8080/messages/2", etag2);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertTrue(updated.body().contains("edited"));
+
+        etag2 = updated.headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(200, send("DELETE", "http://localhost:8080/messages/2", null));
+        Assert.assertEquals(304, get("http://localhost:8080/messages/1", etag1).statusCode());
+        HttpResponse<String> deleted = get("http://localhost:8080/messages/2", etag2);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals("", deleted.body());
+    }
+
+    /**
+     * Getting accounts 1 and 2's messages with their ETags, then account 2 posting a message
+     *
+     * Expected Response:
+     *  Account 1's messages are still 304, and account 2's are 200 with the new message
+     */
+    @Test
+    public void accountEtagsChangeWithTheAccountsMessages() throws IOException, InterruptedException {
+        String etag1 = get("http://localhost:8080/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        String etag2 = get("http://localhost:8080/accounts/2/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        postMessage(2);
+        Assert.assertEquals(304, get("http://localhost:8080/accounts/1/messages", etag1).statusCode());
+        HttpResponse<String> changed = get("http://localhost:8080/accounts/2/messages", etag2);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertTrue(changed.body().contains("\"message_id\":2"));
+    }
+
+    /**
+     * If-None-Match with a list of tags that includes the current one without its W/ prefix, and with a tag from
+     * before the tables were reset
+     *
+     * Expected Response:
+     *  304, then 200
+     */
+    @Test
+    public void ifNoneMatchListsAndResets() throws IOException, InterruptedException {
+        String etag = get("http://localhost:8080/messages?limit=10", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertTrue(etag.startsWith("W/\""));
+        Assert.assertEquals(304, get("http://localhost:8080/messages?limit=10",
+                "\"stale\", " + etag.substring(2)).statusCode());
+
+        ConnectionUtil.resetTestDatabase();
+        Assert.assertEquals(200, get("http://localhost:8080/messages?limit=10", etag).statusCode());
+    }
+
+    private int send(String method, String url, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private HttpResponse<String> get(String url, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(url));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(int postedBy) throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/messages", "{" +
+                "\"posted_by\":" + postedBy + ", " +
+                "\"message_text\": \"hello from " + postedBy + "\", " +
+                "\"time_posted_epoch\": 1669947793}"));
+    }
+}
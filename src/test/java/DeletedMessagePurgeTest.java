@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class DeletedMessagePurgeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending DELETE localhost:8080/messages/1, then reading, updating and deleting message 1 again
+     *
+     * Expected Response:
+     *  The delete returns the message, and afterwards GET localhost:8080/messages/1 is empty, GET
+     *  localhost:8080/messages and GET localhost:8080/accounts/1/messages are [], PATCH is a 400 and a second DELETE
+     *  has an empty body
+     */
+    @Test
+    public void deletedMessageIsHiddenImmediately() throws IOException, InterruptedException {
+        // Read it first so it's in the message cache and the timeline cache
+        Assert.assertFalse(get("/messages/1").body().isEmpty());
+        Assert.assertEquals("[{\"message_id\":1,\"posted_by\":1,\"message_text\":\"test message 1\","
+                + "\"time_posted_epoch\":1669947792}]", get("/accounts/1/messages").body());
+
+        HttpResponse<String> deleted = webClient.send(delete(1), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(deleted.body(), Message.class));
+
+        Assert.assertTrue(get("/messages/1").body().isEmpty());
+        Assert.assertEquals("[]", get("/messages").body());
+        Assert.assertEquals("[]", get("/accounts/1/messages").body());
+        Assert.assertFalse(get("/messages?limit=10").body().contains("test message 1"));
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"too late\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(400, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> again = webClient.send(delete(1), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertTrue(again.body().isEmpty());
+    }
+
+    /**
+     * Posting 10 messages, deleting 7 of them (and message 1), then purging
+     *
+     * Expected Result:
+     *  Only the 3 messages that weren't deleted are left in the table
+     */
+    @Test
+    public void purgeRemovesDeletedRows() throws IOException, InterruptedException, SQLException {
+        Assume.assumeNotNull(MessageService.getPurger());
+
+        for (int i = 0; i < 10; i++) {
+            MessageService.newMessage(new Message(1, "message " + i, 1669947792));
+        }
+        for (int id = 1; id <= 8; id++) {
+            Assert.assertEquals(200, webClient.send(delete(id), HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        MessageService.getPurger().purge();
+
+        Assert.assertEquals(3, countRows());
+        Assert.assertTrue(MessageService.getPurger().getRowCount() >= 8);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest delete(int id) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + id))
+                .DELETE()
+                .build();
+    }
+
+    private int countRows() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement("select count(*) from message");
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.EncodedMessagesCache;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class EncodedMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages once the pre-encoded response is ready, with and without
+     * Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200, the same messages either way, gzipped when asked for
+     */
+    @Test
+    public void encodedMessagesWithAndWithoutGzip() throws IOException, InterruptedException {
+        EncodedMessagesCache.Body encoded = awaitEncoded();
+        Assert.assertEquals(1, encoded.getMessageCount());
+
+        HttpResponse<String> plain = webClient.send(request(null), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, plain.statusCode());
+        Assert.assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messages(plain.body()));
+
+        HttpResponse<InputStream> gzipped = webClient.send(request("gzip, deflate"),
+                HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, gzipped.statusCode());
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElseThrow());
+        try (InputStream body = new GZIPInputStream(gzipped.body())) {
+            Assert.assertEquals(plain.body(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Posting a message once the pre-encoded response is ready, then sending GET localhost:8080/messages straight away
+     *
+     * Expected Response:
+     *  Both messages, whether or not the response has been encoded again yet
+     */
+    @Test
+    public void encodedMessagesAreNeverStale() throws IOException, InterruptedException {
+        awaitEncoded();
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = webClient.send(request(null), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "hello message", 1669947793)), messages(response.body()));
+        Assert.assertEquals(2, awaitEncoded().getMessageCount());
+    }
+
+    private EncodedMessagesCache.Body awaitEncoded() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            EncodedMessagesCache.Body encoded = MessageService.getEncodedMessages();
+            if (encoded != null) {
+                return encoded;
+            }
+            Thread.sleep(50);
+        }
+        Assert.fail("GET /messages was not encoded within 5 seconds");
+        return null;
+    }
+
+    private HttpRequest request(String acceptEncoding) {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return request.build();
+    }
+
+    private List<Message> messages(String body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<List<Message>>(){});
+    }
+}
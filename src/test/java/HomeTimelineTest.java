@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+/**
+ * The test run sets socialmedia.home.fanOutMaxFollowers to 2 and socialmedia.home.maxMessagesPerAccount to 4 (see
+ * pom.xml), so a third follower switches an account to fan-out on read, and a fifth message falls off a home timeline.
+ */
+public class HomeTimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Then register accounts 2 to 4. Account 1 has posted message 1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 2; i <= 4; i++) {
+            HttpRequest registerRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser" + i + "\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Account 2 follows accounts 1 and 3 and reads its home timeline, then accounts 1, 3 and 4 post a message each
+     *
+     * Expected Response:
+     *  Account 2's home timeline is [1] at first, then [3, 2, 1]: the new messages from the accounts it follows,
+     *  newest first, and not account 4's
+     */
+    @Test
+    public void homeTimelineGetsNewMessages() throws IOException, InterruptedException {
+        follow(2, 1);
+        follow(2, 3);
+        Assert.assertEquals(List.of(1), home(2));
+
+        Assert.assertEquals(2, postMessage(1));
+        Assert.assertEquals(3, postMessage(3));
+        Assert.assertEquals(4, postMessage(4));
+
+        Assert.assertEquals(List.of(3, 2, 1), home(2));
+        Assert.assertEquals(List.of(), home(3));
+    }
+
+    /**
+     * Account 2 follows accounts 1 and 3, each posts a message, then account 2 unfollows account 1 and follows it again
+     *
+     * Expected Response:
+     *  [3, 2, 1], then [3] once account 1 is unfollowed, then [3, 2, 1] again, old messages included
+     */
+    @Test
+    public void unfollowAndFollowAgain() throws IOException, InterruptedException {
+        follow(2, 1);
+        follow(2, 3);
+        postMessage(1);
+        postMessage(3);
+        Assert.assertEquals(List.of(3, 2, 1), home(2));
+
+        Assert.assertEquals(200, send("DELETE", "http://localhost:8080/accounts/1/follow", "{\"account_id\": 2}"));
+        Assert.assertEquals(List.of(3), home(2));
+
+        follow(2, 1);
+        follow(2, 1);
+        Assert.assertEquals(List.of(3, 2, 1), home(2));
+    }
+
+    /**
+     * Accounts 2, 3 and 4 all follow account 1, one more than is fanned out on write, then account 1 posts a message
+     *
+     * Expected Response:
+     *  Every follower's home timeline has the new message anyway, read from the database, and still has it once a
+     *  follower leaves and account 1's messages are fanned out on write again
+     */
+    @Test
+    public void homeTimelineOfPopularAccount() throws IOException, InterruptedException {
+        follow(2, 1);
+        follow(3, 1);
+        follow(4, 1);
+        Assert.assertEquals(List.of(1), home(2));
+
+        Assert.assertEquals(2, postMessage(1));
+        Assert.assertEquals(List.of(2, 1), home(2));
+        Assert.assertEquals(List.of(2, 1), home(4));
+
+        Assert.assertEquals(200, send("DELETE", "http://localhost:8080/accounts/1/follow", "{\"account_id\": 4}"));
+        Assert.assertEquals(3, postMessage(1));
+        Assert.assertEquals(List.of(3, 2, 1), home(2));
+        Assert.assertEquals(List.of(3, 2, 1), home(3));
+    }
+
+    /**
+     * Account 2 follows account 3 and reads its home timeline, then account 3 posts messages 2 to 7, more than a home
+     * timeline keeps. Then following X-Next-Cursor from GET localhost:8080/accounts/2/home?limit=2
+     *
+     * Expected Response:
+     *  Pages of [7, 6], [5, 4] and [3, 2]: the last one from the database
+     */
+    @Test
+    public void homeTimelinePagedPastWhatIsKept() throws IOException, InterruptedException {
+        follow(2, 3);
+        Assert.assertEquals(List.of(), home(2));
+        for (int i = 0; i < 6; i++) {
+            postMessage(3);
+        }
+
+        List<List<Integer>> pages = new ArrayList<>();
+        String firstPage = "http://localhost:8080/accounts/2/home?limit=2";
+        String url = firstPage;
+        while (url != null) {
+            HttpResponse<String> response = get(url);
+            Assert.assertEquals(200, response.statusCode());
+            pages.add(ids(response));
+
+            Optional<String> next = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER);
+            url = next.isPresent() ? firstPage + "&after=" + next.get() : null;
+        }
+
+        Assert.assertEquals(List.of(List.of(7, 6), List.of(5, 4), List.of(3, 2)), pages);
+    }
+
+    /**
+     * Account 2 follows accounts 1, 3 and 4, and account 3 posts messages 2 to 41, a long history next to what a home
+     * timeline keeps. Then GET localhost:8080/accounts/2/home?limit=3 and GET localhost:8080/accounts/2/home, counting
+     * the statements MessageDAO.getMessageIdsByUserIdsBefore runs
+     *
+     * Expected Response:
+     *  [41, 40, 39] from one statement that loads the timeline, then all 41 messages from one more for the part past
+     *  what the timeline keeps: one statement for all three accounts, however long their histories
+     */
+    @Test
+    public void homeTimelineReadsFollowedAccountsInOneStatement() throws IOException, InterruptedException {
+        follow(2, 1);
+        follow(2, 3);
+        follow(2, 4);
+        for (int i = 0; i < 40; i++) {
+            postMessage(3);
+        }
+
+        LatencyHistogram statements = Metrics.operation("MessageDAO.getMessageIdsByUserIdsBefore").getLatency();
+        long before = statements.getCount();
+
+        HttpResponse<String> response = get("http://localhost:8080/accounts/2/home?limit=3");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(41, 40, 39), ids(response));
+        Assert.assertEquals(1, statements.getCount() - before);
+
+        List<Integer> all = home(2);
+        Assert.assertEquals(41, all.size());
+        Assert.assertEquals(Integer.valueOf(41), all.get(0));
+        Assert.assertEquals(Integer.valueOf(1), all.get(40));
+        Assert.assertEquals(2, statements.getCount() - before);
+    }
+
+    /**
+     * Account 2 follows account 1, which posts message 2 and then deletes it
+     *
+     * Expected Response:
+     *  [2, 1], then [1]
+     */
+    @Test
+    public void homeTimelineSkipsDeletedMessages() throws IOException, InterruptedException {
+        follow(2, 1);
+        postMessage(1);
+        Assert.assertEquals(List.of(2, 1), home(2));
+
+        Assert.assertEquals(200, send("DELETE", "http://localhost:8080/messages/2", null));
+        Assert.assertEquals(List.of(1), home(2));
+    }
+
+    /**
+     * Following yourself or an account that doesn't exist, unfollowing as an account that doesn't exist, and a home
+     * timeline page with a bad limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void badFollowRequests() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/2/follow", "{\"account_id\": 2}"));
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/99/follow", "{\"account_id\": 2}"));
+        Assert.assertEquals(400, send("DELETE", "http://localhost:8080/accounts/1/follow", "{\"account_id\": 99}"));
+        Assert.assertEquals(400, get("http://localhost:8080/accounts/2/home?limit=0").statusCode());
+    }
+
+    private void follow(int followerId, int followeeId) throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/accounts/" + followeeId + "/follow",
+                "{\"account_id\": " + followerId + "}"));
+    }
+
+    private List<Integer> home(int accountId) throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/" + accountId + "/home");
+        Assert.assertEquals(200, response.statusCode());
+        return ids(response);
+    }
+
+    private int send(String method, String url, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private int postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello from " + postedBy + "\", " +
+                        "\"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class).getMessage_id();
+    }
+}
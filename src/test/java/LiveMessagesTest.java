@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageFeed;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LiveMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Connecting to ws://localhost:8080/messages/live, then creating, updating and deleting message 2
+     *
+     * Expected Response:
+     *  A created, an updated and a deleted event, each with the message as it was after the change
+     */
+    @Test
+    public void liveFeedSendsChanges() throws Exception {
+        Listener listener = connect("ws://localhost:8080/messages/live");
+
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/messages",
+                "{\"posted_by\":1, \"message_text\": \"hello live\", \"time_posted_epoch\": 1669947793}"));
+        Assert.assertEquals(200, send("PATCH", "http://localhost:8080/messages/2", "{\"message_text\": \"edited\"}"));
+        Assert.assertEquals(200, send("DELETE", "http://localhost:8080/messages/2", null));
+
+        assertEvent(listener.next(), "created", new Message(2, 1, "hello live", 1669947793));
+        assertEvent(listener.next(), "updated", new Message(2, 1, "edited", 1669947793));
+        assertEvent(listener.next(), "deleted", new Message(2, 1, "edited", 1669947793));
+        listener.webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+
+    /**
+     * Connecting to ws://localhost:8080/messages/live?posted_by=2, then posting as account 1 and then as account 2
+     *
+     * Expected Response:
+     *  Only account 2's message comes through
+     */
+    @Test
+    public void liveFeedForOneAccount() throws Exception {
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/register",
+                "{\"username\": \"testuser2\", \"password\": \"password\"}"));
+        Listener listener = connect("ws://localhost:8080/messages/live?posted_by=2");
+
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/messages",
+                "{\"posted_by\":1, \"message_text\": \"from one\", \"time_posted_epoch\": 1669947793}"));
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/messages",
+                "{\"posted_by\":2, \"message_text\": \"from two\", \"time_posted_epoch\": 1669947794}"));
+
+        assertEvent(listener.next(), "created", new Message(3, 2, "from two", 1669947794));
+        listener.webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+
+    /**
+     * Connecting to ws://localhost:8080/messages/live?posted_by=someone
+     *
+     * Expected Response:
+     *  The socket is closed with status 1008
+     */
+    @Test
+    public void liveFeedBadPostedBy() throws Exception {
+        Listener listener = connect("ws://localhost:8080/messages/live?posted_by=someone");
+        Assert.assertEquals(Integer.valueOf(1008), listener.closed.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A subscriber that never finishes a send, fed more events than it may have in flight
+     *
+     * Expected Response:
+     *  It is closed as too slow and gets nothing more, while a subscriber that keeps up gets every event
+     */
+    @Test
+    public void slowSubscriberIsEvicted() throws Exception {
+        MessageFeed feed = new MessageFeed(2, 60_000, 100);
+        BlockingQueue<String> slowSent = new LinkedBlockingQueue<>();
+        CompletableFuture<String> slowClosed = new CompletableFuture<>();
+        BlockingQueue<String> fastSent = new LinkedBlockingQueue<>();
+
+        feed.subscribe(null, new MessageFeed.Sink() {
+            public void send(String text, Runnable done) {
+                slowSent.add(text);
+            }
+            public void ping(Runnable done) {
+            }
+            public void close(String reason) {
+                slowClosed.complete(reason);
+            }
+        });
+        feed.subscribe(1, new MessageFeed.Sink() {
+            public void send(String text, Runnable done) {
+                fastSent.add(text);
+                done.run();
+            }
+            public void ping(Runnable done) {
+                done.run();
+            }
+            public void close(String reason) {
+                Assert.fail("closed a subscriber that keeps up: " + reason);
+            }
+        });
+
+        for (int i = 1; i <= 4; i++) {
+            feed.onInsert(new Message(i, 1, "message " + i, 1669947793));
+        }
+
+        Assert.assertEquals("Too slow", slowClosed.get(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            Assert.assertEquals(i, objectMapper.readTree(fastSent.poll(5, TimeUnit.SECONDS)).get("message")
+                    .get("message_id").asInt());
+        }
+        Assert.assertEquals(2, slowSent.size());
+        Assert.assertEquals(1, feed.getSubscriberCount());
+        Assert.assertEquals(1, feed.getEvictionCount());
+    }
+
+    /**
+     * A bulk insert of 250 messages, alternating between accounts 2 and 1, into a feed whose queue holds one event
+     * and whose subscribers may have two sends in flight
+     *
+     * Expected Response:
+     *  Nobody is closed. A subscriber to every message gets all 250 in 3 created frames, and a subscriber to account 2
+     *  gets just its 125 in 2
+     */
+    @Test
+    public void bulkInsertIsOneEvent() throws Exception {
+        MessageFeed feed = new MessageFeed(2, 60_000, 1);
+        BlockingQueue<String> everyoneSent = new LinkedBlockingQueue<>();
+        BlockingQueue<String> accountSent = new LinkedBlockingQueue<>();
+        feed.subscribe(null, keepingUp(everyoneSent));
+        feed.subscribe(2, keepingUp(accountSent));
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 250; i++) {
+            messages.add(new Message(i, 1 + i % 2, "message " + i, 1669947793));
+        }
+        feed.onInsert(messages);
+
+        Assert.assertEquals(List.of(100, 100, 50), frameSizes(everyoneSent, 3, 1));
+        Assert.assertEquals(List.of(100, 25), frameSizes(accountSent, 2, 2));
+        Assert.assertEquals(2, feed.getSubscriberCount());
+        Assert.assertEquals(0, feed.getEvictionCount());
+    }
+
+    private MessageFeed.Sink keepingUp(BlockingQueue<String> sent) {
+        return new MessageFeed.Sink() {
+            public void send(String text, Runnable done) {
+                sent.add(text);
+                done.run();
+            }
+            public void ping(Runnable done) {
+                done.run();
+            }
+            public void close(String reason) {
+                Assert.fail("closed a subscriber that keeps up: " + reason);
+            }
+        };
+    }
+
+    // Reads count created frames, checking their message_ids count up from 1 in steps of step
+    private List<Integer> frameSizes(BlockingQueue<String> sent, int count, int step) throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        int nextId = 1;
+        for (int i = 0; i < count; i++) {
+            String text = sent.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("no frame within 5 seconds", text);
+            JsonNode frame = objectMapper.readTree(text);
+            Assert.assertEquals("created", frame.get("event").asText());
+            for (JsonNode message : frame.get("messages")) {
+                Assert.assertEquals(nextId, message.get("message_id").asInt());
+                nextId += step;
+            }
+            sizes.add(frame.get("messages").size());
+        }
+        return sizes;
+    }
+
+    private void assertEvent(JsonNode event, String type, Message expected) throws IOException {
+        Assert.assertEquals(type, event.get("event").asText());
+        Assert.assertEquals(expected, objectMapper.treeToValue(event.get("message"), Message.class));
+    }
+
+    private int send(String method, String url, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private Listener connect(String url) {
+        Listener listener = new Listener();
+        listener.webSocket = webClient.newWebSocketBuilder().buildAsync(URI.create(url), listener).join();
+        return listener;
+    }
+
+    // Collects each text message as JSON, and the close status
+    private class Listener implements WebSocket.Listener {
+        final BlockingQueue<JsonNode> events = new LinkedBlockingQueue<>();
+        final CompletableFuture<Integer> closed = new CompletableFuture<>();
+        final StringBuilder text = new StringBuilder();
+        WebSocket webSocket;
+
+        JsonNode next() throws InterruptedException {
+            JsonNode event = events.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("no event within 5 seconds", event);
+            return event;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                try {
+                    events.add(objectMapper.readTree(text.toString()));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                text.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed.complete(statusCode);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageCacheInvalidationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 (so the message is cached), then PATCH localhost:8080/messages/1, then
+     * GET localhost:8080/messages/1 again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the message with its updated text
+     */
+    @Test
+    public void getMessageAfterUpdateReturnsUpdatedMessage() throws IOException, InterruptedException {
+        Message original = getMessage(1);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), original);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Assert.assertEquals(expectedResult, getMessage(1));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 (so the message is cached), then resetting the database with a different
+     * message 1, then GET localhost:8080/messages/1 again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the message as it is in the database now
+     */
+    @Test
+    public void getMessageAfterDatabaseResetIsNotStale() throws IOException, InterruptedException {
+        getMessage(1);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        ConnectionUtil.resetTestDatabase();
+
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, getMessage(1));
+    }
+
+    private Message getMessage(int id) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + id))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), Message.class);
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsEndpointTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1, GET localhost:8080/messages?limit=x (a 400) and a request for a path
+     * that doesn't exist, then GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200, in the Prometheus text format, with latency and status counts for each route by its path
+     *  template, DAO method timings, and the connection pool's gauges
+     */
+    @Test
+    public void metricsAreExportedInPrometheusFormat() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=x").statusCode());
+        Assert.assertEquals(404, get("/no/such/path").statusCode());
+
+        HttpResponse<String> response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String metrics = response.body();
+
+        Assert.assertTrue(value(metrics, "socialmedia_http_requests_total{method=\"GET\","
+                + "route=\"/messages/{message_id}\",status=\"200\"}") >= 1);
+        Assert.assertTrue(value(metrics, "socialmedia_http_requests_total{method=\"GET\",route=\"/messages\","
+                + "status=\"400\"}") >= 1);
+        Assert.assertTrue(value(metrics, "socialmedia_http_requests_total{method=\"GET\",route=\"unmatched\","
+                + "status=\"404\"}") >= 1);
+        Assert.assertTrue(value(metrics, "socialmedia_http_request_duration_seconds_count{method=\"GET\","
+                + "route=\"/messages/{message_id}\"}") >= 1);
+        Assert.assertTrue(value(metrics, "socialmedia_http_request_duration_seconds{method=\"GET\","
+                + "route=\"/messages/{message_id}\",quantile=\"0.99\"}") > 0);
+        Assert.assertTrue(value(metrics, "socialmedia_dao_duration_seconds_count{"
+                + "operation=\"MessageDAO.getMessageById\"}") >= 1);
+        Assert.assertEquals(1, value(metrics, "socialmedia_http_requests_in_flight"), 0);
+        Assert.assertTrue(value(metrics, "socialmedia_pool_max_connections") >= 1);
+
+        // Every line is a comment or a sample: name{labels} value
+        Pattern sample = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*(\\{([a-z_]+=\"[^\"]*\",?)*\\})? -?[0-9.eE+-]+");
+        for (String line : metrics.split("\n")) {
+            Assert.assertTrue(line, line.startsWith("# HELP ") || line.startsWith("# TYPE ")
+                    || sample.matcher(line).matches());
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private double value(String metrics, String series) {
+        Matcher matcher = Pattern.compile("^" + Pattern.quote(series) + " (\\S+)$", Pattern.MULTILINE).matcher(metrics);
+        Assert.assertTrue(series, matcher.find());
+        return Double.parseDouble(matcher.group(1));
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Then post four more messages, so account 1 has messages 1 through 5.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 2; i <= 5; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Following X-Next-Cursor from GET localhost:8080/messages?limit=2 until it runs out
+     *
+     * Expected Response:
+     *  Pages of [1, 2], [3, 4] and [5], with no cursor on the last page
+     */
+    @Test
+    public void getAllMessagesPaged() throws IOException, InterruptedException {
+        List<List<Integer>> pages = followPages("http://localhost:8080/messages?limit=2");
+
+        Assert.assertEquals(List.of(List.of(1, 2), List.of(3, 4), List.of(5)), pages);
+    }
+
+    /**
+     * Following X-Next-Cursor from GET localhost:8080/accounts/1/messages?limit=3 until it runs out
+     *
+     * Expected Response:
+     *  Pages of [1, 2, 3] and [4, 5]
+     */
+    @Test
+    public void getAllMessagesFromUserPaged() throws IOException, InterruptedException {
+        List<List<Integer>> pages = followPages("http://localhost:8080/accounts/1/messages?limit=3");
+
+        Assert.assertEquals(List.of(List.of(1, 2, 3), List.of(4, 5)), pages);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages?limit=3 (no messages for user)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of an empty list, with no next cursor
+     */
+    @Test
+    public void getAllMessagesFromUserPagedNoMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/messages?limit=3"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isEmpty());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertTrue(messages.isEmpty());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a cursor that wasn't issued by the server
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getAllMessagesPagedBadCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=2&after=not-a-cursor"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a limit of 0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getAllMessagesPagedBadLimit() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private List<List<Integer>> followPages(String firstPage) throws IOException, InterruptedException {
+        List<List<Integer>> pages = new ArrayList<>();
+        String url = firstPage;
+
+        while (url != null) {
+            HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+
+            List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            List<Integer> ids = new ArrayList<>();
+            for (Message message : messages) {
+                ids.add(message.getMessage_id());
+            }
+            pages.add(ids);
+
+            Optional<String> next = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER);
+            url = next.isPresent() ? firstPage + "&after=" + next.get() : null;
+        }
+        return pages;
+    }
+}
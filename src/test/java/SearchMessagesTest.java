@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.SearchIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Then post messages 2 to 5, each with its own time_posted_epoch:
+     *  2 "the quick brown fox" at 100, 3 "a lazy brown dog" at 300, 4 "Quick thinking saves the day" at 200 and
+     *  5 "Foxes and dogs are friends" at 400
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        postMessage("the quick brown fox", 100);
+        postMessage("a lazy brown dog", 300);
+        postMessage("Quick thinking saves the day", 200);
+        postMessage("Foxes and dogs are friends", 400);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with every word required, with OR, and with a
+     * prefix
+     *
+     * Expected Response:
+     *  "quick brown" matches [2] only, "fox OR dog" matches [3, 2] (whole words only, most recent first), and "fox*"
+     *  matches [5, 2]. Case doesn't matter.
+     */
+    @Test
+    public void searchMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(2), search("quick brown"));
+        Assert.assertEquals(List.of(3, 2), search("fox OR dog"));
+        Assert.assertEquals(List.of(5, 2), search("fox*"));
+        Assert.assertEquals(List.of(4, 2), search("QUICK"));
+        Assert.assertEquals(List.of(), search("cat"));
+    }
+
+    /**
+     * Following X-Next-Cursor from GET localhost:8080/messages/search?q=brown OR quick OR friends&limit=2 until it
+     * runs out
+     *
+     * Expected Response:
+     *  Pages of [5, 3] and [4, 2]: newest time_posted_epoch first
+     */
+    @Test
+    public void searchMessagesPaged() throws IOException, InterruptedException {
+        String firstPage = "http://localhost:8080/messages/search?limit=2&q="
+                + URLEncoder.encode("brown OR quick OR friends", StandardCharsets.UTF_8);
+        List<List<Integer>> pages = new ArrayList<>();
+        String url = firstPage;
+
+        while (url != null) {
+            HttpResponse<String> response = get(url);
+            Assert.assertEquals(200, response.statusCode());
+            pages.add(ids(response));
+
+            Optional<String> next = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER);
+            url = next.isPresent() ? firstPage + "&after=" + next.get() : null;
+        }
+
+        Assert.assertEquals(List.of(List.of(5, 3), List.of(4, 2)), pages);
+    }
+
+    /**
+     * Updating message 2 to "slow red fox" and deleting message 3, then searching
+     *
+     * Expected Response:
+     *  Message 2 is found by its new words and not its old ones, and message 3 isn't found at all
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"slow red fox\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(4), search("quick"));
+        Assert.assertEquals(List.of(2), search("slow fox"));
+        Assert.assertEquals(List.of(), search("brown"));
+    }
+
+    /**
+     * Starting the app against messages that were written straight to the database
+     *
+     * Expected Response:
+     *  They are found: the index is built from the table at startup
+     */
+    @Test
+    public void searchIndexBuiltAtStartup() throws IOException, InterruptedException {
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO.newMessage(new Message(1, "written before startup", 1669947792));
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        Assert.assertEquals(List.of(2), search("before startup"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with no q, and GET localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Status Code: 400 for the search, and message 1 is still found by id
+     */
+    @Test
+    public void searchWithoutQuery() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=%20").statusCode());
+        Assert.assertEquals(200, get("http://localhost:8080/messages/1").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with a prefix that matches more words than
+     * SearchIndex.MAX_PREFIX_TERMS, after posting zq0 to zq128, and with one that matches fewer
+     *
+     * Expected Response:
+     *  Status Code: 400 for "zq*", and "zq1*" (40 words) matches [9, 8, 6]
+     */
+    @Test
+    public void searchPrefixMatchingTooManyWords() throws IOException, InterruptedException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i <= SearchIndex.MAX_PREFIX_TERMS; i++) {
+            if (i % 40 == 0 && text.length() > 0) {
+                postMessage(text.toString().trim(), 500 + i);
+                text.setLength(0);
+            }
+            text.append("zq").append(i).append(' ');
+        }
+        postMessage(text.toString().trim(), 1000);
+
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=zq*").statusCode());
+        Assert.assertEquals(List.of(9, 8, 6), search("zq1*"));
+    }
+
+    private List<Integer> search(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages/search?q="
+                + URLEncoder.encode(query, StandardCharsets.UTF_8));
+        Assert.assertEquals(200, response.statusCode());
+        return ids(response);
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private void postMessage(String text, long timePosted) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + timePosted + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
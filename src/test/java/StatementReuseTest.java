@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StatementReuseTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending 50 rounds of GET localhost:8080/messages, GET localhost:8080/messages?limit=10 and
+     * GET localhost:8080/accounts/1/messages?limit=10
+     *
+     * Expected Result:
+     *  Every response is 200, the prepared statements are reused from the pool's statement cache rather than prepared
+     *  again, and no result sets are left open afterwards
+     */
+    @Test
+    public void statementsAreReusedAndClosed() throws IOException, InterruptedException {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        long hitsBefore = pool.getStatementCacheHits();
+        long missesBefore = pool.getStatementCacheMisses();
+
+        for (int i = 0; i < 50; i++) {
+            for (String url : new String[] { "http://localhost:8080/messages", "http://localhost:8080/messages?limit=10",
+                    "http://localhost:8080/accounts/1/messages?limit=10" }) {
+                HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+                Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+            }
+        }
+
+        // At least the page of all messages is queried every round (GET /messages is served pre-encoded, and account
+        // 1's timeline is cached, after the first)
+        long hits = pool.getStatementCacheHits() - hitsBefore;
+        long misses = pool.getStatementCacheMisses() - missesBefore;
+        Assert.assertTrue(hits + misses >= 50);
+        Assert.assertTrue(misses <= 3L * pool.getMaxSize());
+        Assert.assertEquals(0, pool.getOpenResultSets());
+        Assert.assertTrue(pool.getOpenStatements() <= pool.getTotalConnections() * 64);
+    }
+
+    /**
+     * Sending 20 PATCH localhost:8080/messages/1 requests, then one for a message that doesn't exist
+     *
+     * Expected Result:
+     *  Each update returns the updated message, each one prepares exactly one statement (the update hands back the
+     *  changed row itself, with no select afterwards), and the missing message is a 400 after a single statement too
+     */
+    @Test
+    public void updateIsOneStatement() throws IOException, InterruptedException {
+        ConnectionPool pool = ConnectionUtil.getPool();
+
+        for (int i = 0; i < 20; i++) {
+            long before = pool.getStatementCacheHits() + pool.getStatementCacheMisses();
+            HttpResponse<String> response = webClient.send(patchMessage(1, "edit " + i),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertTrue(response.body().contains("\"message_text\":\"edit " + i + "\""));
+            Assert.assertEquals(1, pool.getStatementCacheHits() + pool.getStatementCacheMisses() - before);
+        }
+
+        long before = pool.getStatementCacheHits() + pool.getStatementCacheMisses();
+        HttpResponse<String> missing = webClient.send(patchMessage(999, "edit"), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, missing.statusCode());
+        Assert.assertEquals(1, pool.getStatementCacheHits() + pool.getStatementCacheMisses() - before);
+        Assert.assertEquals(0, pool.getOpenResultSets());
+    }
+
+    private HttpRequest patchMessage(int id, String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + id))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Then register account 2 and post messages 2 to 6:
+     *  2 by account 1 at 100, 3 by account 2 at 300, 4 by account 1 at 200, 5 by account 2 at 200, 6 by account 1 at
+     *  400. Message 1 (account 1) is at 1669947792.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        postMessage(1, 100);
+        postMessage(2, 300);
+        postMessage(1, 200);
+        postMessage(2, 200);
+        postMessage(1, 400);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with since and until, either one alone, and posted_by
+     *
+     * Expected Response:
+     *  The messages with since <= time_posted_epoch < until, ordered by time_posted_epoch and then message_id
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 5, 3), ids("http://localhost:8080/messages?since=200&until=400"));
+        Assert.assertEquals(List.of(4), ids("http://localhost:8080/messages?since=200&until=400&posted_by=1"));
+        Assert.assertEquals(List.of(2, 4, 5), ids("http://localhost:8080/messages?until=300"));
+        Assert.assertEquals(List.of(6, 1), ids("http://localhost:8080/messages?since=400"));
+        Assert.assertEquals(List.of(5, 3), ids("http://localhost:8080/messages?posted_by=2"));
+        Assert.assertEquals(List.of(), ids("http://localhost:8080/messages?since=200&until=200"));
+    }
+
+    /**
+     * Following X-Next-Cursor from GET localhost:8080/messages?since=0&limit=2, and from
+     * GET localhost:8080/messages?posted_by=1&limit=2, until they run out
+     *
+     * Expected Response:
+     *  Pages of [2, 4], [5, 3] and [6, 1], and of [2, 4] and [6, 1]
+     */
+    @Test
+    public void getMessagesInTimeRangePaged() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(List.of(2, 4), List.of(5, 3), List.of(6, 1)),
+                followPages("http://localhost:8080/messages?since=0&limit=2"));
+        Assert.assertEquals(List.of(List.of(2, 4), List.of(6, 1)),
+                followPages("http://localhost:8080/messages?posted_by=1&limit=2"));
+    }
+
+    /**
+     * Deleting message 4, then sending an http request to GET localhost:8080/messages?since=200&until=400
+     *
+     * Expected Response:
+     *  Messages [5, 3]
+     */
+    @Test
+    public void getMessagesInTimeRangeSkipsDeleted() throws IOException, InterruptedException {
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/4"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(5, 3), ids("http://localhost:8080/messages?since=200&until=400"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with since after until, and with a since that isn't a
+     * number
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInTimeRangeBadRange() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=400&until=100").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=400&until=100&limit=2").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=yesterday").statusCode());
+    }
+
+    private List<List<Integer>> followPages(String firstPage) throws IOException, InterruptedException {
+        List<List<Integer>> pages = new ArrayList<>();
+        String url = firstPage;
+
+        while (url != null) {
+            HttpResponse<String> response = get(url);
+            Assert.assertEquals(200, response.statusCode());
+            pages.add(ids(response));
+
+            Optional<String> next = response.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER);
+            url = next.isPresent() ? firstPage + "&after=" + next.get() : null;
+        }
+        return pages;
+    }
+
+    private List<Integer> ids(String url) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(url);
+        Assert.assertEquals(200, response.statusCode());
+        return ids(response);
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(int postedBy, long timePosted) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"message at " + timePosted + "\", " +
+                        "\"time_posted_epoch\": " + timePosted + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class UnknownAccountMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending 20 POST localhost:8080/messages requests with posted_by values that don't exist
+     *
+     * Expected Response:
+     *  Status Code: 400 for each, without a single statement being prepared against the database
+     */
+    @Test
+    public void unknownAccountIsRejectedWithoutTheDatabase() throws IOException, InterruptedException {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        long statementsBefore = pool.getStatementCacheHits() + pool.getStatementCacheMisses();
+
+        for (int postedBy : new int[] { 0, -1, 2, 99, 64, 65, 1_000_000, Integer.MAX_VALUE }) {
+            HttpResponse<String> response = webClient.send(postMessage(postedBy, "hello"),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(400, response.statusCode());
+            Assert.assertTrue(response.body().isEmpty());
+        }
+
+        Assert.assertEquals(statementsBefore, pool.getStatementCacheHits() + pool.getStatementCacheMisses());
+    }
+
+    /**
+     * Sending POST localhost:8080/register for a new user, then POST localhost:8080/messages as that user
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, and the message is posted_by the new account's id
+     */
+    @Test
+    public void newAccountCanPostImmediately() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"newuser\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registerResponse = webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, registerResponse.statusCode());
+        Account account = objectMapper.readValue(registerResponse.body(), Account.class);
+
+        HttpResponse<String> response = webClient.send(postMessage(account.getAccount_id(), "first post"),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Message message = objectMapper.readValue(response.body(), Message.class);
+        Assert.assertEquals(account.getAccount_id(), message.getPosted_by());
+    }
+
+    private HttpRequest postMessage(int postedBy, String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+}